@@ -7,5 +7,6 @@ public class JwtClaimsConstant {
     public static final String PHONE = "phone";
     public static final String USERNAME = "username";
     public static final String NAME = "name";
+    public static final String SHOP_ID = "shopId";
 
 }
@@ -14,6 +14,7 @@ public class MessageConstant {
     public static final String CATEGORY_BE_RELATED_BY_SETMEAL = "当前分类关联了套餐,不能删除";
     public static final String CATEGORY_BE_RELATED_BY_DISH = "当前分类关联了菜品,不能删除";
     public static final String SHOPPING_CART_IS_NULL = "购物车数据为空，不能下单";
+    public static final String PRODUCT_NOT_FOUND = "商品不存在";
     public static final String ADDRESS_BOOK_IS_NULL = "用户地址为空，不能下单";
     public static final String LOGIN_FAILED = "登录失败";
     public static final String UPLOAD_FAILED = "文件上传失败";
@@ -26,5 +27,11 @@ public class MessageConstant {
     public static final String ORDER_NOT_FOUND = "订单不存在";
 
     public static final String ORDER_ALREADY_PAID = "订单已经支付";
+    public static final String ORDER_NUMBER_UNAVAILABLE = "订单号暂时无法生成，请稍后再试";
+    public static final String REPORT_DATE_RANGE_ERROR = "统计日期区间错误";
+    public static final String REPORT_EXPORT_BUSY = "导出任务繁忙，请稍后再试";
+    public static final String REPORT_EXPORT_JOB_NOT_FOUND = "导出任务不存在";
+    public static final String REPORT_EXPORT_NOT_READY = "导出文件尚未生成";
+    public static final String REPORT_RECONCILE_BUSY = "营业数据对账正在执行，请稍后再试";
 
 }
@@ -0,0 +1,50 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.cache")
+@Data
+public class CacheProperties {
+
+    /**
+     * 本地一级缓存，每个缓存名最多保存的条目数和写入后的过期时间（秒）
+     * 过期时间用于兜底失效广播丢失的情况
+     */
+    private long localMaximumSize = 1000;
+    private long localTtl = 60;
+
+    /**
+     * redis二级缓存的过期时间（秒）
+     */
+    private long redisTtl = 3600;
+
+    /**
+     * 逻辑过期时间（秒），逻辑过期后返回旧数据并在后台刷新，小于等于0时不启用
+     * 逻辑过期前按概率提前刷新，refresh-beta越大越早刷新，为0时不提前刷新
+     */
+    private long softTtl = 600;
+    private double refreshBeta = 1.0;
+
+    /**
+     * 缓存未命中时是否使用redis锁，保证多个实例中只有一个实例查询数据库
+     * lock-ttl为锁的过期时间（毫秒），lock-wait为未获取到锁时等待其他实例写入缓存的最长时间（毫秒）
+     */
+    private boolean distributedLock = false;
+    private long lockTtl = 5000;
+    private long lockWait = 1000;
+
+    /**
+     * redis value的序列化格式，json或smile，序列化后超过阈值（字节）时压缩
+     */
+    private String serializer = "json";
+    private int compressThreshold = 1024;
+
+    /**
+     * 缓存失效广播使用的redis频道
+     */
+    private String invalidateTopic = "sky:cache:invalidate";
+
+}
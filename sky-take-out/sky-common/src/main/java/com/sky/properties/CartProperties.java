@@ -0,0 +1,30 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.cart")
+@Data
+public class CartProperties {
+
+    /**
+     * 购物车存储方式，mysql或redis
+     */
+    private String store = "mysql";
+
+    /**
+     * redis存储时是否异步批量写回mysql，关闭后购物车只保存在redis中
+     * flush-interval为写回间隔（毫秒），flush-batch-size为每次从待写回集合中取出的用户数
+     */
+    private boolean writeBehind = true;
+    private long flushInterval = 5000;
+    private int flushBatchSize = 200;
+
+    /**
+     * redis中购物车的过期时间（秒）
+     */
+    private long ttl = 604800;
+
+}
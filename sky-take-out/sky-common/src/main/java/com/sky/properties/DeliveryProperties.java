@@ -0,0 +1,17 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.delivery")
+@Data
+public class DeliveryProperties {
+
+    /**
+     * 配送范围（米），按驾车距离判断
+     */
+    private int maxDistance = 5000;
+
+}
@@ -0,0 +1,36 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.http-client")
+@Data
+public class HttpClientProperties {
+
+    /**
+     * 连接池最大连接数，以及每个目标主机的最大连接数
+     */
+    private int maxTotal = 200;
+    private int maxPerRoute = 50;
+
+    /**
+     * 建立连接、从连接池获取连接、读取响应的超时时间（毫秒）
+     */
+    private int connectTimeout = 5000;
+    private int connectionRequestTimeout = 2000;
+    private int socketTimeout = 5000;
+
+    /**
+     * 服务端未返回Keep-Alive时连接的保持时间（毫秒）
+     */
+    private long keepAlive = 30000;
+
+    /**
+     * 空闲连接的最长保留时间，以及清理过期、空闲连接的间隔（毫秒）
+     */
+    private long idleTimeout = 30000;
+    private long evictInterval = 10000;
+
+}
@@ -0,0 +1,39 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.order")
+@Data
+public class OrderProperties {
+
+    /**
+     * 待付款订单的超时时间（秒），超时后自动取消
+     */
+    private long payTimeout = 900;
+
+    /**
+     * 从超时队列中取出到期订单的间隔（毫秒），以及每次取出和批量更新的订单数
+     */
+    private long timeoutPollInterval = 1000;
+    private int timeoutBatchSize = 100;
+
+    /**
+     * 派送中订单超过该时间（分钟）后由每日任务自动完成
+     */
+    private long deliveryTimeout = 60;
+
+    /**
+     * 生成订单号使用的机器id，取值0~1023，多个实例必须不同；不配置时从redis租用
+     */
+    private Long workerId;
+
+    /**
+     * 从redis租用机器id时租约的有效期（秒）和续约间隔（毫秒）
+     */
+    private long workerLeaseTtl = 60;
+    private long workerLeaseRenewInterval = 20000;
+
+}
@@ -0,0 +1,24 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.scheduler")
+@Data
+public class SchedulerProperties {
+
+    /**
+     * 多实例部署时定时任务是否加redis锁，同一时间只有一个实例执行
+     */
+    private boolean lock = true;
+
+    /**
+     * 定时任务分片，shard-total为分片总数，shard-index为当前实例负责的分片（从0开始）
+     * 分片总数大于1时，支持分片的任务只处理 id % shard-total = shard-index 的数据，每个分片单独加锁
+     */
+    private int shardTotal = 1;
+    private int shardIndex = 0;
+
+}
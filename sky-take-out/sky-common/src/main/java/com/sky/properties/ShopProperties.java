@@ -0,0 +1,22 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.shop")
+@Data
+public class ShopProperties {
+
+    /**
+     * 当前门店id，单门店部署时订单和员工都属于该门店
+     */
+    private Long id = 1L;
+
+    /**
+     * 商家门店地址
+     */
+    private String address;
+
+}
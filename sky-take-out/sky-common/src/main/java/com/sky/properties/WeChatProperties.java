@@ -19,5 +19,6 @@ public class WeChatProperties {
     private String weChatPayCertFilePath; //平台证书
     private String notifyUrl; //支付成功的回调地址
     private String refundNotifyUrl; //退款成功的回调地址
+    private long reloadInterval = 60000; //检查私钥和平台证书文件是否更新的间隔（毫秒）
 
 }
@@ -0,0 +1,55 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.websocket")
+@Data
+public class WebSocketProperties {
+
+    /**
+     * 每个会话待发送消息队列的容量
+     */
+    private int queueCapacity = 100;
+
+    /**
+     * 队列已满时的处理方式：
+     * drop-oldest 丢弃最早的消息，drop-newest 丢弃新消息，close 关闭该会话
+     */
+    private String overflowPolicy = "drop-oldest";
+
+    /**
+     * 单条消息异步发送的超时时间（毫秒），超时后关闭会话
+     */
+    private long sendTimeout = 5000;
+
+    /**
+     * 多实例部署时通过redis频道广播消息，每个实例转发给本机的会话
+     */
+    private boolean cluster = true;
+    private String topic = "sky:websocket:notify";
+
+    /**
+     * 合并发送的时间窗口（毫秒），大于0时同一会话在窗口内的消息合并为一个JSON数组发送，客户端需要按数组解析
+     * 默认为0，不合并，每条消息单独发送
+     */
+    private long coalesceWindow = 0;
+
+    /**
+     * 建立连接时是否必须携带管理端jwt令牌（连接地址参数token）
+     * 关闭时未携带令牌的连接按当前门店的匿名连接处理，携带了无效令牌的连接仍然拒绝
+     */
+    private boolean requireToken = false;
+
+    /**
+     * 保留最近消息的条数，客户端重连时携带lastSeq参数补发之后的消息，为0时不保留
+     * 开启replay-stream时消息同时写入redis stream，本机缓存不足（如实例重启）时从stream补发
+     */
+    private int replayCapacity = 200;
+    private boolean replayStream = false;
+    private String streamKey = "sky:websocket:stream";
+    private String seqKey = "sky:websocket:seq";
+
+}
@@ -10,7 +10,6 @@ import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.utils.URIBuilder;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.util.EntityUtils;
 
@@ -22,10 +21,34 @@ import java.util.Map;
 
 /**
  * Http工具类
+ * 所有请求共用一个带连接池的HttpClient，连接保持复用，不再每次请求创建和关闭客户端
  */
 public class HttpClientUtil {
 
-    static final  int TIMEOUT_MSEC = 5 * 1000;
+    private static volatile CloseableHttpClient httpClient;
+    private static volatile RequestConfig requestConfig;
+
+    /**
+     * 设置共用的HttpClient和请求超时配置，由HttpClientUtilInitializer在启动时调用
+     * @param client
+     * @param config
+     */
+    public static void init(CloseableHttpClient client, RequestConfig config) {
+        requestConfig = config;
+        httpClient = client;
+    }
+
+    /**
+     * 获取共用的HttpClient，未初始化时抛出异常，不再另外创建连接池
+     * @return
+     */
+    public static CloseableHttpClient getHttpClient() {
+        CloseableHttpClient client = httpClient;
+        if (client == null) {
+            throw new IllegalStateException("HttpClientUtil尚未初始化，请在Spring容器启动完成后调用");
+        }
+        return client;
+    }
 
     /**
      * 发送GET方式请求
@@ -34,8 +57,8 @@ public class HttpClientUtil {
      * @return
      */
     public static String doGet(String url,Map<String,String> paramMap){
-        // 创建Httpclient对象
-        CloseableHttpClient httpClient = HttpClients.createDefault();
+        // 获取共用的Httpclient对象
+        CloseableHttpClient httpClient = getHttpClient();
 
         String result = "";
         CloseableHttpResponse response = null;
@@ -51,6 +74,7 @@ public class HttpClientUtil {
 
             //创建GET请求
             HttpGet httpGet = new HttpGet(uri);
+            httpGet.setConfig(builderRequestConfig());
 
             //发送请求
             response = httpClient.execute(httpGet);
@@ -58,16 +82,14 @@ public class HttpClientUtil {
             //判断响应状态
             if(response.getStatusLine().getStatusCode() == 200){
                 result = EntityUtils.toString(response.getEntity(),"UTF-8");
+            }else {
+                //读完响应体，连接才能归还连接池复用
+                EntityUtils.consume(response.getEntity());
             }
         }catch (Exception e){
             e.printStackTrace();
         }finally {
-            try {
-                response.close();
-                httpClient.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            closeResponse(response);
         }
 
         return result;
@@ -81,8 +103,8 @@ public class HttpClientUtil {
      * @throws IOException
      */
     public static String doPost(String url, Map<String, String> paramMap) throws IOException {
-        // 创建Httpclient对象
-        CloseableHttpClient httpClient = HttpClients.createDefault();
+        // 获取共用的Httpclient对象
+        CloseableHttpClient httpClient = getHttpClient();
         CloseableHttpResponse response = null;
         String resultString = "";
 
@@ -110,11 +132,7 @@ public class HttpClientUtil {
         } catch (Exception e) {
             throw e;
         } finally {
-            try {
-                response.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            closeResponse(response);
         }
 
         return resultString;
@@ -128,8 +146,8 @@ public class HttpClientUtil {
      * @throws IOException
      */
     public static String doPost4Json(String url, Map<String, String> paramMap) throws IOException {
-        // 创建Httpclient对象
-        CloseableHttpClient httpClient = HttpClients.createDefault();
+        // 获取共用的Httpclient对象
+        CloseableHttpClient httpClient = getHttpClient();
         CloseableHttpResponse response = null;
         String resultString = "";
 
@@ -160,20 +178,29 @@ public class HttpClientUtil {
         } catch (Exception e) {
             throw e;
         } finally {
-            try {
-                response.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            closeResponse(response);
         }
 
         return resultString;
     }
+
+    /**
+     * 关闭响应，连接归还连接池，HttpClient本身不关闭
+     * @param response
+     */
+    private static void closeResponse(CloseableHttpResponse response) {
+        if (response == null) {
+            return;
+        }
+        try {
+            response.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
     private static RequestConfig builderRequestConfig() {
-        return RequestConfig.custom()
-                .setConnectTimeout(TIMEOUT_MSEC)
-                .setConnectionRequestTimeout(TIMEOUT_MSEC)
-                .setSocketTimeout(TIMEOUT_MSEC).build();
+        return requestConfig;
     }
 
 }
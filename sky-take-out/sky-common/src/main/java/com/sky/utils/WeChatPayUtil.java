@@ -6,20 +6,24 @@ import com.sky.properties.WeChatProperties;
 import com.wechat.pay.contrib.apache.httpclient.WechatPayHttpClientBuilder;
 import com.wechat.pay.contrib.apache.httpclient.util.PemUtil;
 import org.apache.commons.lang.RandomStringUtils;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.http.HttpHeaders;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.util.EntityUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
 import java.security.PrivateKey;
 import java.security.Signature;
@@ -33,6 +37,7 @@ import java.util.List;
  * 微信支付工具类
  */
 @Component
+@Slf4j
 public class WeChatPayUtil {
 
     //微信支付下单接口地址
@@ -44,32 +49,104 @@ public class WeChatPayUtil {
     @Autowired
     private WeChatProperties weChatProperties;
 
+    //使用sky.http-client配置的共享连接池和超时时间，空闲连接清理和连接池指标与其他外部接口一致
+    @Autowired
+    private PoolingHttpClientConnectionManager httpClientConnectionManager;
+    @Autowired
+    private RequestConfig httpClientRequestConfig;
+
+    //当前使用的商户私钥和客户端
+    private volatile Credentials credentials;
+    //上次检查证书文件的时间
+    private volatile long lastCheckTime;
+
+    /**
+     * 商户私钥、平台证书和基于它们构造的客户端，证书文件修改后整体替换
+     */
+    private static class Credentials {
+        private final PrivateKey merchantPrivateKey;
+        private final CloseableHttpClient httpClient;
+        private final long privateKeyModified;
+        private final long certModified;
+
+        private Credentials(PrivateKey merchantPrivateKey, CloseableHttpClient httpClient, long privateKeyModified, long certModified) {
+            this.merchantPrivateKey = merchantPrivateKey;
+            this.httpClient = httpClient;
+            this.privateKeyModified = privateKeyModified;
+            this.certModified = certModified;
+        }
+    }
+
     /**
-     * 获取调用微信接口的客户端工具对象
+     * 获取当前的商户私钥和客户端
+     * 私钥、证书只加载一次，按reload-interval检查文件修改时间，文件变化后重新加载
      *
      * @return
      */
-    private CloseableHttpClient getClient() {
-        PrivateKey merchantPrivateKey = null;
-        try {
-            //merchantPrivateKey商户API私钥，如何加载商户API私钥请看常见问题
-            merchantPrivateKey = PemUtil.loadPrivateKey(new FileInputStream(new File(weChatProperties.getPrivateKeyFilePath())));
-            //加载平台证书文件
-            X509Certificate x509Certificate = PemUtil.loadCertificate(new FileInputStream(new File(weChatProperties.getWeChatPayCertFilePath())));
-            //wechatPayCertificates微信支付平台证书列表。你也可以使用后面章节提到的“定时更新平台证书功能”，而不需要关心平台证书的来龙去脉
-            List<X509Certificate> wechatPayCertificates = Arrays.asList(x509Certificate);
-
-            WechatPayHttpClientBuilder builder = WechatPayHttpClientBuilder.create()
-                    .withMerchant(weChatProperties.getMchid(), weChatProperties.getMchSerialNo(), merchantPrivateKey)
-                    .withWechatPay(wechatPayCertificates);
-
-            // 通过WechatPayHttpClientBuilder构造的HttpClient，会自动的处理签名和验签
-            CloseableHttpClient httpClient = builder.build();
-            return httpClient;
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-            return null;
+    private Credentials getCredentials() {
+        Credentials current = credentials;
+        long now = System.currentTimeMillis();
+        if (current != null && now - lastCheckTime < weChatProperties.getReloadInterval()) {
+            return current;
+        }
+        synchronized (this) {
+            current = credentials;
+            if (current != null && now - lastCheckTime < weChatProperties.getReloadInterval()) {
+                return current;
+            }
+            File privateKeyFile = new File(weChatProperties.getPrivateKeyFilePath());
+            File certFile = new File(weChatProperties.getWeChatPayCertFilePath());
+            long privateKeyModified = privateKeyFile.lastModified();
+            long certModified = certFile.lastModified();
+            if (current == null || current.privateKeyModified != privateKeyModified || current.certModified != certModified) {
+                try {
+                    credentials = loadCredentials(privateKeyFile, certFile, privateKeyModified, certModified);
+                    if (current != null) {
+                        log.info("微信支付证书文件已更新，重新加载");
+                    }
+                } catch (Exception e) {
+                    if (current == null) {
+                        throw new IllegalStateException("加载微信支付证书失败", e);
+                    }
+                    //新文件可能还未写完，继续使用原来的证书，下次检查时重试
+                    log.error("重新加载微信支付证书失败，继续使用原证书", e);
+                }
+            }
+            lastCheckTime = now;
+            return credentials;
+        }
+    }
+
+    /**
+     * 加载商户私钥、平台证书，构造调用微信接口的客户端工具对象
+     *
+     * @return
+     */
+    private Credentials loadCredentials(File privateKeyFile, File certFile, long privateKeyModified, long certModified) throws IOException {
+        PrivateKey merchantPrivateKey;
+        X509Certificate x509Certificate;
+        //merchantPrivateKey商户API私钥
+        try (InputStream in = new FileInputStream(privateKeyFile)) {
+            merchantPrivateKey = PemUtil.loadPrivateKey(in);
         }
+        //加载平台证书文件
+        try (InputStream in = new FileInputStream(certFile)) {
+            x509Certificate = PemUtil.loadCertificate(in);
+        }
+        //wechatPayCertificates微信支付平台证书列表
+        List<X509Certificate> wechatPayCertificates = Arrays.asList(x509Certificate);
+
+        WechatPayHttpClientBuilder builder = WechatPayHttpClientBuilder.create()
+                .withMerchant(weChatProperties.getMchid(), weChatProperties.getMchSerialNo(), merchantPrivateKey)
+                .withWechatPay(wechatPayCertificates);
+        builder.setConnectionManager(httpClientConnectionManager)
+                //连接池由Spring管理，客户端替换时不关闭连接池
+                .setConnectionManagerShared(true)
+                .setDefaultRequestConfig(httpClientRequestConfig);
+
+        // 通过WechatPayHttpClientBuilder构造的HttpClient，会自动的处理签名和验签
+        CloseableHttpClient httpClient = builder.build();
+        return new Credentials(merchantPrivateKey, httpClient, privateKeyModified, certModified);
     }
 
     /**
@@ -80,7 +157,7 @@ public class WeChatPayUtil {
      * @return
      */
     private String post(String url, String body) throws Exception {
-        CloseableHttpClient httpClient = getClient();
+        CloseableHttpClient httpClient = getCredentials().httpClient;
 
         HttpPost httpPost = new HttpPost(url);
         httpPost.addHeader(HttpHeaders.ACCEPT, ContentType.APPLICATION_JSON.toString());
@@ -93,7 +170,7 @@ public class WeChatPayUtil {
             String bodyAsString = EntityUtils.toString(response.getEntity());
             return bodyAsString;
         } finally {
-            httpClient.close();
+            //只关闭响应，连接归还连接池，客户端继续复用
             response.close();
         }
     }
@@ -105,7 +182,7 @@ public class WeChatPayUtil {
      * @return
      */
     private String get(String url) throws Exception {
-        CloseableHttpClient httpClient = getClient();
+        CloseableHttpClient httpClient = getCredentials().httpClient;
 
         HttpGet httpGet = new HttpGet(url);
         httpGet.addHeader(HttpHeaders.ACCEPT, ContentType.APPLICATION_JSON.toString());
@@ -117,7 +194,7 @@ public class WeChatPayUtil {
             String bodyAsString = EntityUtils.toString(response.getEntity());
             return bodyAsString;
         } finally {
-            httpClient.close();
+            //只关闭响应，连接归还连接池，客户端继续复用
             response.close();
         }
     }
@@ -188,7 +265,7 @@ public class WeChatPayUtil {
             byte[] message = signMessage.getBytes();
 
             Signature signature = Signature.getInstance("SHA256withRSA");
-            signature.initSign(PemUtil.loadPrivateKey(new FileInputStream(new File(weChatProperties.getPrivateKeyFilePath()))));
+            signature.initSign(getCredentials().merchantPrivateKey);
             signature.update(message);
             String packageSign = Base64.getEncoder().encodeToString(signature.sign());
 
@@ -0,0 +1,31 @@
+package com.sky.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * 按天分组统计的订单数据
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class DailyOrderStatDTO implements Serializable {
+    //日期
+    private LocalDate date;
+
+    //当天订单总数
+    private Integer orderCount;
+
+    //当天有效订单数（已完成）
+    private Integer validOrderCount;
+
+    //当天营业额（已完成订单金额）
+    private BigDecimal turnover;
+}
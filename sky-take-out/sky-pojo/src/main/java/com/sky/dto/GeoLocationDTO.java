@@ -0,0 +1,26 @@
+package com.sky.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 收货地址的经纬度坐标和到店铺的配送距离
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class GeoLocationDTO implements Serializable {
+    //纬度
+    private Double lat;
+
+    //经度
+    private Double lng;
+
+    //到店铺的驾车距离（米），未进行路线规划时为空
+    private Integer distance;
+}
@@ -0,0 +1,33 @@
+package com.sky.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+/**
+ * 商品（菜品或套餐）基本信息，加入购物车时使用
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ProductDTO implements Serializable {
+    //菜品或套餐id
+    private Long id;
+
+    //名称
+    private String name;
+
+    //图片
+    private String image;
+
+    //价格
+    private BigDecimal price;
+
+    //状态 0停售 1起售
+    private Integer status;
+}
@@ -0,0 +1,30 @@
+package com.sky.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 支付回调记录
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PayNotifyLog implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    //微信支付交易号
+    private String transactionId;
+
+    //商户订单号
+    private String outTradeNo;
+
+    //首次收到回调的时间
+    private LocalDateTime createTime;
+}
@@ -0,0 +1,25 @@
+package com.sky.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 定时任务锁，多实例部署时同一时间只有一个实例执行被标注的方法，其他实例直接跳过
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface SchedulerLock {
+    //锁名称
+    String value();
+
+    //锁的最长持有时间（毫秒），实例宕机时到期自动释放
+    long lockAtMostFor() default 10 * 60 * 1000;
+
+    //锁的最短持有时间（毫秒），避免各实例时钟不一致时任务很快执行完后被其他实例重复执行
+    long lockAtLeastFor() default 0;
+
+    //是否按分片加锁，为true时每个分片单独加锁
+    boolean sharded() default false;
+}
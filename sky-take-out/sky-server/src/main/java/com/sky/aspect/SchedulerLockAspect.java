@@ -0,0 +1,98 @@
+package com.sky.aspect;
+
+import com.sky.annotation.SchedulerLock;
+import com.sky.properties.SchedulerProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.UUID;
+
+/**
+ * 定时任务锁切面，使用redis锁保证多实例部署时同一个任务同一时间只有一个实例执行
+ */
+@Component
+@Slf4j
+@Aspect
+public class SchedulerLockAspect {
+
+    private static final String LOCK_KEY = "sky:scheduler:lock:";
+
+    //只有锁的值与加锁时的标识一致才释放；未到最短持有时间时改为在剩余时间后过期
+    private static final RedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) ~= ARGV[1] then " +
+                    "  return 0 " +
+                    "end " +
+                    "if tonumber(ARGV[2]) > 0 then " +
+                    "  return redis.call('PEXPIRE', KEYS[1], ARGV[2]) " +
+                    "end " +
+                    "return redis.call('DEL', KEYS[1])", Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private SchedulerProperties schedulerProperties;
+
+    /**
+     * 切入点
+     */
+    @Pointcut("execution(* com.sky.task.*.*(..)) && @annotation(com.sky.annotation.SchedulerLock)")
+    public void schedulerLockPointCut() {
+    }
+
+    /**
+     * 环绕通知，获取到锁才执行任务
+     */
+    @Around("schedulerLockPointCut()")
+    public Object lock(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (!schedulerProperties.isLock()) {
+            return joinPoint.proceed();
+        }
+        MethodSignature signature = (MethodSignature) joinPoint.getSignature();
+        SchedulerLock schedulerLock = signature.getMethod().getAnnotation(SchedulerLock.class);
+
+        String lockKey = LOCK_KEY + schedulerLock.value();
+        if (schedulerLock.sharded() && schedulerProperties.getShardTotal() > 1) {
+            lockKey = lockKey + ":" + schedulerProperties.getShardIndex();
+        }
+
+        String token = UUID.randomUUID().toString();
+        Boolean locked;
+        try {
+            locked = stringRedisTemplate.opsForValue()
+                    .setIfAbsent(lockKey, token, Duration.ofMillis(schedulerLock.lockAtMostFor()));
+        } catch (Exception e) {
+            //redis不可用时不执行，由下一次调度重试，避免多个实例同时执行
+            log.error("定时任务加锁失败，跳过本次执行:{}", lockKey, e);
+            return null;
+        }
+        if (!Boolean.TRUE.equals(locked)) {
+            log.debug("定时任务正在其他实例执行，跳过:{}", lockKey);
+            return null;
+        }
+
+        long start = System.currentTimeMillis();
+        try {
+            return joinPoint.proceed();
+        } finally {
+            long remaining = schedulerLock.lockAtLeastFor() - (System.currentTimeMillis() - start);
+            try {
+                stringRedisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(lockKey),
+                        token, String.valueOf(Math.max(remaining, 0)));
+            } catch (Exception e) {
+                //释放失败时锁到期后自动释放
+                log.warn("定时任务释放锁失败:{},{}", lockKey, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.sky.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * redis中缓存数据的包装，记录逻辑过期时间和查询数据库的耗时
+ * 逻辑过期后仍然可以返回旧数据，由后台线程刷新，避免缓存过期时大量请求同时查询数据库
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheEnvelope implements Serializable {
+
+    //缓存数据
+    private Object value;
+
+    //逻辑过期时间（毫秒时间戳）
+    private long expireTime;
+
+    //查询数据库的耗时（毫秒）
+    private long cost;
+
+    /**
+     * 是否需要刷新：逻辑过期后一定刷新，过期前按概率提前刷新，查询耗时越长、越接近过期时间，提前刷新的概率越大
+     * 即 now - cost * beta * ln(random) >= expireTime
+     *
+     * @param beta 提前刷新的系数，越大越早刷新，为0时只在逻辑过期后刷新
+     * @return
+     */
+    public boolean shouldRefresh(double beta) {
+        long now = System.currentTimeMillis();
+        if (now >= expireTime) {
+            return true;
+        }
+        double random = ThreadLocalRandom.current().nextDouble();
+        if (random == 0) {
+            return false;
+        }
+        return now - cost * beta * Math.log(random) >= expireTime;
+    }
+}
@@ -0,0 +1,26 @@
+package com.sky.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 缓存失效广播消息，通知其他实例删除本地一级缓存
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheMessage implements Serializable {
+
+    //缓存名
+    private String cacheName;
+
+    //缓存key，为空时清空整个缓存
+    private String key;
+
+    //发送消息的实例id，实例收到自己发出的消息时忽略
+    private String sender;
+
+}
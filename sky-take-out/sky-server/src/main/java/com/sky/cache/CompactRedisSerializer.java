@@ -0,0 +1,144 @@
+package com.sky.cache;
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.jsontype.BasicPolymorphicTypeValidator;
+import com.fasterxml.jackson.databind.jsontype.PolymorphicTypeValidator;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.sky.json.JacksonObjectMapper;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * redis value序列化器，基于jackson写入json或二进制的Smile格式，超过阈值时使用gzip压缩
+ * 数据的第一个字节记录格式，读取时按格式解析，JDK序列化的旧数据仍按JDK方式读取
+ * 序列化时按Object类型写入类型信息，顶层的Long等数值也会带上类型，读取后类型不变；
+ * 读取时只允许还原项目自身和java.util、java.math、java.time等白名单中的类型
+ */
+public class CompactRedisSerializer implements RedisSerializer<Object> {
+
+    public static final String FORMAT_JSON = "json";
+    public static final String FORMAT_SMILE = "smile";
+
+    //数据格式标记，JDK序列化的数据以0xAC开头，不会与这里的标记冲突
+    private static final byte MARK_JSON = 0x01;
+    private static final byte MARK_SMILE = 0x02;
+    private static final byte MARK_GZIP = 0x10;
+    private static final byte JDK_STREAM_MAGIC = (byte) 0xAC;
+
+    private static final byte[] EMPTY_ARRAY = new byte[0];
+
+    //反序列化时允许根据类型信息创建的类，其余类型一律拒绝，避免redis中的数据指定任意类
+    private static final PolymorphicTypeValidator TYPE_VALIDATOR = BasicPolymorphicTypeValidator.builder()
+            .allowIfSubType("com.sky.")
+            .allowIfSubType("java.util.")
+            .allowIfSubType("java.math.")
+            .allowIfSubType("java.time.")
+            .allowIfSubType(String.class)
+            .allowIfSubType(Boolean.class)
+            .allowIfSubType(Character.class)
+            .allowIfSubType(Byte.class)
+            .allowIfSubType(Short.class)
+            .allowIfSubType(Integer.class)
+            .allowIfSubType(Long.class)
+            .allowIfSubType(Float.class)
+            .allowIfSubType(Double.class)
+            .allowIfSubTypeIsArray()
+            .build();
+
+    private final ObjectWriter objectWriter;
+    private final byte formatMark;
+    private final int compressThreshold;
+
+    private final ObjectMapper jsonMapper;
+    private final ObjectMapper smileMapper;
+    private final JdkSerializationRedisSerializer jdkSerializer = new JdkSerializationRedisSerializer();
+
+    /**
+     * @param format            写入使用的格式，json或smile
+     * @param compressThreshold 序列化后超过该字节数时压缩，小于等于0时不压缩
+     */
+    public CompactRedisSerializer(String format, int compressThreshold) {
+        this.jsonMapper = createObjectMapper(null);
+        this.smileMapper = createObjectMapper(new SmileFactory());
+        if (FORMAT_SMILE.equalsIgnoreCase(format)) {
+            this.objectWriter = smileMapper.writerFor(Object.class);
+            this.formatMark = MARK_SMILE;
+        } else {
+            this.objectWriter = jsonMapper.writerFor(Object.class);
+            this.formatMark = MARK_JSON;
+        }
+        this.compressThreshold = compressThreshold;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return EMPTY_ARRAY;
+        }
+        try {
+            //按Object类型写入，顶层值也会带上类型信息
+            byte[] data = objectWriter.writeValueAsBytes(value);
+            boolean compress = compressThreshold > 0 && data.length > compressThreshold;
+            ByteArrayOutputStream out = new ByteArrayOutputStream(compress ? data.length / 4 + 16 : data.length + 1);
+            out.write(compress ? formatMark | MARK_GZIP : formatMark);
+            if (compress) {
+                try (OutputStream gzip = new GZIPOutputStream(out)) {
+                    gzip.write(data);
+                }
+            } else {
+                out.write(data);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new SerializationException("序列化redis数据失败: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        byte mark = bytes[0];
+        if (mark == JDK_STREAM_MAGIC) {
+            return jdkSerializer.deserialize(bytes);
+        }
+        ObjectMapper mapper = (mark & ~MARK_GZIP) == MARK_SMILE ? smileMapper : jsonMapper;
+        try {
+            InputStream in = new ByteArrayInputStream(bytes, 1, bytes.length - 1);
+            if ((mark & MARK_GZIP) != 0) {
+                in = new GZIPInputStream(in);
+            }
+            try (InputStream input = in) {
+                return mapper.readValue(input, Object.class);
+            }
+        } catch (IOException e) {
+            throw new SerializationException("反序列化redis数据失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 基于项目的JacksonObjectMapper创建，日期时间格式与接口返回的json一致，并写入类型信息用于读取时还原对象
+     *
+     * @param jsonFactory
+     * @return
+     */
+    private static ObjectMapper createObjectMapper(JsonFactory jsonFactory) {
+        JacksonObjectMapper objectMapper = new JacksonObjectMapper(jsonFactory);
+        objectMapper.activateDefaultTyping(TYPE_VALIDATOR,
+                ObjectMapper.DefaultTyping.NON_FINAL, JsonTypeInfo.As.PROPERTY);
+        return objectMapper;
+    }
+}
@@ -0,0 +1,122 @@
+package com.sky.cache;
+
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * redis缓存key索引，每个缓存名使用一个set记录已写入的key
+ * 清空缓存时只删除索引中记录的key，不使用会阻塞redis的KEYS命令扫描整个库，也不在一个lua脚本中删除全部key
+ */
+public class RedisCacheKeyIndex {
+
+    //缓存key前缀，redis中的key为 sky:cache:缓存名::key
+    public static final String KEY_PREFIX = "sky:cache:";
+
+    //每批删除的key数量
+    private static final int CLEAR_BATCH_SIZE = 500;
+
+    //索引存在时改名，清空期间新写入的key记录到新的索引中，改名是O(1)操作
+    private static final RedisScript<Long> DETACH_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return 0 end " +
+                    "redis.call('RENAME', KEYS[1], KEYS[2]) " +
+                    "redis.call('PEXPIRE', KEYS[2], ARGV[1]) " +
+                    "return 1", Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    //索引的过期时间不短于缓存数据的过期时间
+    private final Duration ttl;
+
+    public RedisCacheKeyIndex(StringRedisTemplate stringRedisTemplate, Duration ttl) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.ttl = ttl;
+    }
+
+    /**
+     * 缓存名对应的redis key前缀
+     *
+     * @param cacheName
+     * @return
+     */
+    public static String getKeyPrefix(String cacheName) {
+        return KEY_PREFIX + cacheName + "::";
+    }
+
+    /**
+     * 记录写入的key
+     *
+     * @param cacheName
+     * @param key
+     */
+    public void add(String cacheName, String key) {
+        String indexKey = getIndexKey(cacheName);
+        stringRedisTemplate.opsForSet().add(indexKey, getKeyPrefix(cacheName) + key);
+        if (!ttl.isZero()) {
+            stringRedisTemplate.expire(indexKey, ttl);
+        }
+    }
+
+    /**
+     * 删除key的记录
+     *
+     * @param cacheName
+     * @param key
+     */
+    public void remove(String cacheName, String key) {
+        stringRedisTemplate.opsForSet().remove(getIndexKey(cacheName), getKeyPrefix(cacheName) + key);
+    }
+
+    /**
+     * 删除缓存名下记录的所有key
+     * 先把索引改名摘下，再用SSCAN分批读取并UNLINK，每条命令只处理一批key，不会长时间阻塞redis
+     *
+     * @param cacheName
+     * @return 删除的key数量
+     */
+    public Long clear(String cacheName) {
+        String clearingKey = getIndexKey(cacheName) + ":clearing:" + UUID.randomUUID();
+        //摘下的索引在清理中断时自行过期
+        long expireMillis = ttl.isZero() ? Duration.ofHours(1).toMillis() : ttl.toMillis();
+        Long detached = stringRedisTemplate.execute(DETACH_SCRIPT,
+                Arrays.asList(getIndexKey(cacheName), clearingKey), String.valueOf(expireMillis));
+        if (detached == null || detached == 0) {
+            return 0L;
+        }
+
+        long count = 0;
+        List<String> batch = new ArrayList<>(CLEAR_BATCH_SIZE);
+        ScanOptions options = ScanOptions.scanOptions().count(CLEAR_BATCH_SIZE).build();
+        try (Cursor<String> cursor = stringRedisTemplate.opsForSet().scan(clearingKey, options)) {
+            while (cursor.hasNext()) {
+                batch.add(cursor.next());
+                if (batch.size() == CLEAR_BATCH_SIZE) {
+                    count += unlink(batch);
+                }
+            }
+        }
+        count += unlink(batch);
+        stringRedisTemplate.unlink(clearingKey);
+        return count;
+    }
+
+    private long unlink(List<String> batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        Long count = stringRedisTemplate.unlink(batch);
+        batch.clear();
+        return count == null ? 0 : count;
+    }
+
+    private String getIndexKey(String cacheName) {
+        return KEY_PREFIX + "index:" + cacheName;
+    }
+}
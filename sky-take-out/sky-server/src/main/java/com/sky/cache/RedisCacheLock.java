@@ -0,0 +1,51 @@
+package com.sky.cache;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.UUID;
+
+/**
+ * 缓存加载使用的redis锁，多个实例同时未命中时只有获取到锁的实例查询数据库
+ */
+public class RedisCacheLock {
+
+    //只有锁的值与加锁时的标识一致才删除，避免删除其他实例在锁过期后获取的锁
+    private static final RedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then " +
+                    "  return redis.call('DEL', KEYS[1]) " +
+                    "end " +
+                    "return 0", Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    public RedisCacheLock(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    /**
+     * 尝试加锁
+     *
+     * @param lockKey
+     * @param ttl     锁的过期时间
+     * @return 加锁成功时返回锁的标识，失败时返回null
+     */
+    public String tryLock(String lockKey, Duration ttl) {
+        String token = UUID.randomUUID().toString();
+        Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(lockKey, token, ttl);
+        return Boolean.TRUE.equals(locked) ? token : null;
+    }
+
+    /**
+     * 释放锁
+     *
+     * @param lockKey
+     * @param token 加锁时返回的标识
+     */
+    public void unlock(String lockKey, String token) {
+        stringRedisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(lockKey), token);
+    }
+}
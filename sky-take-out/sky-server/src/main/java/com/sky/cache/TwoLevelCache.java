@@ -0,0 +1,355 @@
+package com.sky.cache;
+
+import com.sky.properties.CacheProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+import org.springframework.core.task.TaskRejectedException;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 二级缓存：一级为进程内的Caffeine缓存，二级为redis缓存
+ * 读取时依次查询本地缓存、redis，写入和删除时同时操作两级缓存，并广播通知其他实例删除本地缓存
+ * redis中写入的key记录在索引中，清空缓存时只删除索引中的key
+ * <p>
+ * 使用 @Cacheable(sync = true) 时防止缓存击穿：
+ * 1. 同一个key在本实例内只有一个线程查询redis和数据库
+ * 2. redis中的数据逻辑过期或按概率提前过期时返回旧数据，由后台线程刷新
+ * 3. 开启redis锁后，多个实例同时未命中时只有一个实例查询数据库
+ */
+@Slf4j
+public class TwoLevelCache extends AbstractValueAdaptingCache {
+
+    //等待其他实例写入缓存时的轮询间隔（毫秒）
+    private static final long LOCK_POLL_INTERVAL = 50;
+
+    private final String name;
+    private final com.github.benmanes.caffeine.cache.Cache<String, Object> localCache;
+    private final Cache redisCache;
+    private final RedisCacheKeyIndex keyIndex;
+    private final TwoLevelCacheManager cacheManager;
+    private final CacheProperties cacheProperties;
+
+    //正在后台刷新的key，同一个key同时只提交一个刷新任务
+    private final Set<String> refreshingKeys = ConcurrentHashMap.newKeySet();
+    //正在加载的key，同一个key的其他线程等待同一个结果
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> loadingFutures = new ConcurrentHashMap<>();
+
+    public TwoLevelCache(String name,
+                         com.github.benmanes.caffeine.cache.Cache<String, Object> localCache,
+                         Cache redisCache,
+                         RedisCacheKeyIndex keyIndex,
+                         TwoLevelCacheManager cacheManager) {
+        super(true);
+        this.name = name;
+        this.localCache = localCache;
+        this.redisCache = redisCache;
+        this.keyIndex = keyIndex;
+        this.cacheManager = cacheManager;
+        this.cacheProperties = cacheManager.getCacheProperties();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return this;
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        String localKey = toLocalKey(key);
+        Object value = localCache.getIfPresent(localKey);
+        if (value != null) {
+            return value;
+        }
+        //本地缓存未命中，查询redis并回填本地缓存
+        CacheEnvelope envelope = getEnvelope(key);
+        if (envelope == null) {
+            return null;
+        }
+        value = toStoreValue(envelope.getValue());
+        localCache.put(localKey, value);
+        return value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        String localKey = toLocalKey(key);
+        Object value = localCache.getIfPresent(localKey);
+        if (value != null) {
+            return (T) fromStoreValue(value);
+        }
+        //同一个key在本实例内只会有一个线程查询redis和数据库，其余线程等待结果
+        //不在Caffeine的compute中加载，避免远程调用和等待期间占用哈希桶的锁
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> loading = loadingFutures.putIfAbsent(localKey, future);
+        if (loading != null) {
+            return (T) fromStoreValue(await(loading));
+        }
+        try {
+            value = loadValue(key, valueLoader);
+            future.complete(value);
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            //加载期间被删除时不回填本地缓存
+            if (loadingFutures.remove(localKey, future) && future.isDone() && !future.isCompletedExceptionally()) {
+                localCache.put(localKey, value);
+            }
+        }
+        return (T) fromStoreValue(value);
+    }
+
+    /**
+     * 本地缓存未命中时查询redis，redis也未命中时查询数据库
+     *
+     * @param key
+     * @param valueLoader
+     * @return
+     */
+    private Object loadValue(Object key, Callable<?> valueLoader) {
+        CacheEnvelope envelope = getEnvelope(key);
+        if (envelope != null) {
+            //逻辑过期或按概率提前过期时，先返回旧数据，后台刷新
+            if (envelope.shouldRefresh(cacheProperties.getRefreshBeta())) {
+                refreshAsync(key, valueLoader);
+            }
+            return toStoreValue(envelope.getValue());
+        }
+        return toStoreValue(load(key, valueLoader));
+    }
+
+    /**
+     * 等待其他线程加载同一个key的结果，加载失败时抛出同样的异常
+     *
+     * @param loading
+     * @return
+     */
+    private Object await(CompletableFuture<Object> loading) {
+        try {
+            return loading.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        putRedis(key, value, 0);
+        localCache.put(toLocalKey(key), toStoreValue(value));
+        cacheManager.publish(name, toLocalKey(key));
+    }
+
+    @Override
+    public void evict(Object key) {
+        redisCache.evict(key);
+        keyIndex.remove(name, toLocalKey(key));
+        loadingFutures.remove(toLocalKey(key));
+        localCache.invalidate(toLocalKey(key));
+        cacheManager.publish(name, toLocalKey(key));
+    }
+
+    @Override
+    public void clear() {
+        keyIndex.clear(name);
+        loadingFutures.clear();
+        localCache.invalidateAll();
+        cacheManager.publish(name, null);
+    }
+
+    /**
+     * 只删除本地缓存，收到其他实例的失效广播时调用
+     *
+     * @param key 为空时清空本地缓存
+     */
+    public void evictLocal(String key) {
+        if (key == null) {
+            loadingFutures.clear();
+            localCache.invalidateAll();
+        } else {
+            loadingFutures.remove(key);
+            localCache.invalidate(key);
+        }
+    }
+
+    /**
+     * 查询redis中的缓存数据
+     *
+     * @param key
+     * @return
+     */
+    private CacheEnvelope getEnvelope(Object key) {
+        ValueWrapper wrapper = redisCache.get(key);
+        if (wrapper == null) {
+            return null;
+        }
+        Object value = wrapper.get();
+        if (value instanceof CacheEnvelope) {
+            return (CacheEnvelope) value;
+        }
+        //没有包装的旧数据视为已逻辑过期，读取时触发刷新
+        return new CacheEnvelope(value, 0, 0);
+    }
+
+    /**
+     * 缓存未命中时查询数据库，开启redis锁时只有获取到锁的实例查询数据库
+     *
+     * @param key
+     * @param valueLoader
+     * @return
+     */
+    private Object load(Object key, Callable<?> valueLoader) {
+        if (!cacheProperties.isDistributedLock()) {
+            return loadAndPut(key, valueLoader);
+        }
+        RedisCacheLock cacheLock = cacheManager.getCacheLock();
+        String lockKey = getLockKey(key);
+        String token = cacheLock.tryLock(lockKey, Duration.ofMillis(cacheProperties.getLockTtl()));
+        if (token == null) {
+            //其他实例正在查询数据库，等待其写入redis，等待超时后自己查询
+            CacheEnvelope envelope = waitForEnvelope(key);
+            return envelope != null ? envelope.getValue() : loadAndPut(key, valueLoader);
+        }
+        try {
+            //获取锁后再检查一次，其他实例可能刚刚释放锁并写入了redis
+            CacheEnvelope envelope = getEnvelope(key);
+            return envelope != null ? envelope.getValue() : loadAndPut(key, valueLoader);
+        } finally {
+            cacheLock.unlock(lockKey, token);
+        }
+    }
+
+    /**
+     * 等待其他实例把数据写入redis
+     *
+     * @param key
+     * @return 等待超时返回null
+     */
+    private CacheEnvelope waitForEnvelope(Object key) {
+        long deadline = System.currentTimeMillis() + cacheProperties.getLockWait();
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(LOCK_POLL_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            CacheEnvelope envelope = getEnvelope(key);
+            if (envelope != null) {
+                return envelope;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 后台刷新缓存，加载方法在刷新线程中执行，不能依赖请求线程中的上下文
+     *
+     * @param key
+     * @param valueLoader
+     */
+    private void refreshAsync(Object key, Callable<?> valueLoader) {
+        String localKey = toLocalKey(key);
+        if (!refreshingKeys.add(localKey)) {
+            return;
+        }
+        try {
+            cacheManager.getRefreshExecutor().execute(() -> refresh(key, valueLoader));
+        } catch (TaskRejectedException e) {
+            //刷新线程池繁忙时放弃本次刷新，继续使用旧数据
+            refreshingKeys.remove(localKey);
+        }
+    }
+
+    private void refresh(Object key, Callable<?> valueLoader) {
+        String localKey = toLocalKey(key);
+        RedisCacheLock cacheLock = cacheManager.getCacheLock();
+        String lockKey = getLockKey(key);
+        String token = null;
+        try {
+            if (cacheProperties.isDistributedLock()) {
+                //其他实例正在刷新时跳过
+                token = cacheLock.tryLock(lockKey, Duration.ofMillis(cacheProperties.getLockTtl()));
+                if (token == null) {
+                    return;
+                }
+            }
+            Object value = loadAndPut(key, valueLoader);
+            localCache.put(localKey, toStoreValue(value));
+            cacheManager.publish(name, localKey);
+        } catch (Exception e) {
+            log.error("刷新缓存失败:{}::{}", name, localKey, e);
+        } finally {
+            if (token != null) {
+                cacheLock.unlock(lockKey, token);
+            }
+            refreshingKeys.remove(localKey);
+        }
+    }
+
+    /**
+     * 查询数据库并写入redis，记录查询耗时用于计算提前刷新的概率
+     *
+     * @param key
+     * @param valueLoader
+     * @return
+     */
+    private Object loadAndPut(Object key, Callable<?> valueLoader) {
+        long start = System.currentTimeMillis();
+        Object value;
+        try {
+            value = valueLoader.call();
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+        putRedis(key, value, System.currentTimeMillis() - start);
+        return value;
+    }
+
+    /**
+     * 写入redis并记录key，先写数据再记录索引，清空缓存与写入并发时最多遗留一个key到过期
+     *
+     * @param key
+     * @param value
+     * @param cost  查询数据库的耗时（毫秒）
+     */
+    private void putRedis(Object key, Object value, long cost) {
+        long softTtl = cacheProperties.getSoftTtl();
+        long expireTime = softTtl > 0 ? System.currentTimeMillis() + softTtl * 1000 : Long.MAX_VALUE;
+        redisCache.put(key, new CacheEnvelope(value, expireTime, cost));
+        keyIndex.add(name, toLocalKey(key));
+    }
+
+    private String getLockKey(Object key) {
+        return RedisCacheKeyIndex.KEY_PREFIX + "lock:" + name + "::" + toLocalKey(key);
+    }
+
+    /**
+     * 本地缓存统一使用字符串key，与广播消息中的key保持一致
+     *
+     * @param key
+     * @return
+     */
+    private String toLocalKey(Object key) {
+        return String.valueOf(key);
+    }
+}
@@ -0,0 +1,118 @@
+package com.sky.cache;
+
+import com.alibaba.fastjson.JSON;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.sky.properties.CacheProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 二级缓存管理器，为每个缓存名创建本地缓存 + redis缓存的组合
+ * 同时监听缓存失效广播，删除其他实例已经修改过的本地缓存
+ */
+@Slf4j
+public class TwoLevelCacheManager implements CacheManager, MessageListener {
+
+    //当前实例id，用于忽略自己发出的广播
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private final ConcurrentMap<String, TwoLevelCache> cacheMap = new ConcurrentHashMap<>();
+
+    private final RedisCacheManager redisCacheManager;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final CacheProperties cacheProperties;
+    private final RedisCacheKeyIndex keyIndex;
+    private final RedisCacheLock cacheLock;
+    //缓存后台刷新线程池
+    private final TaskExecutor refreshExecutor;
+
+    public TwoLevelCacheManager(RedisCacheManager redisCacheManager,
+                                StringRedisTemplate stringRedisTemplate,
+                                CacheProperties cacheProperties,
+                                TaskExecutor refreshExecutor) {
+        this.redisCacheManager = redisCacheManager;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.cacheProperties = cacheProperties;
+        this.refreshExecutor = refreshExecutor;
+        this.keyIndex = new RedisCacheKeyIndex(stringRedisTemplate, Duration.ofSeconds(cacheProperties.getRedisTtl()));
+        this.cacheLock = new RedisCacheLock(stringRedisTemplate);
+    }
+
+    public CacheProperties getCacheProperties() {
+        return cacheProperties;
+    }
+
+    public RedisCacheLock getCacheLock() {
+        return cacheLock;
+    }
+
+    public TaskExecutor getRefreshExecutor() {
+        return refreshExecutor;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return cacheMap.computeIfAbsent(name, this::createCache);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return Collections.unmodifiableSet(cacheMap.keySet());
+    }
+
+    private TwoLevelCache createCache(String name) {
+        com.github.benmanes.caffeine.cache.Cache<String, Object> localCache = Caffeine.newBuilder()
+                .maximumSize(cacheProperties.getLocalMaximumSize())
+                .expireAfterWrite(Duration.ofSeconds(cacheProperties.getLocalTtl()))
+                .build();
+        return new TwoLevelCache(name, localCache, redisCacheManager.getCache(name), keyIndex, this);
+    }
+
+    /**
+     * 广播缓存失效消息，广播失败时其他实例的本地缓存在过期后失效
+     *
+     * @param cacheName
+     * @param key       为空时表示清空整个缓存
+     */
+    public void publish(String cacheName, String key) {
+        CacheMessage cacheMessage = new CacheMessage(cacheName, key, instanceId);
+        try {
+            stringRedisTemplate.convertAndSend(cacheProperties.getInvalidateTopic(), JSON.toJSONString(cacheMessage));
+        } catch (Exception e) {
+            log.error("广播缓存失效消息失败:{}", cacheMessage, e);
+        }
+    }
+
+    /**
+     * 处理缓存失效广播
+     *
+     * @param message
+     * @param pattern
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        CacheMessage cacheMessage = JSON.parseObject(new String(message.getBody(), StandardCharsets.UTF_8), CacheMessage.class);
+        if (instanceId.equals(cacheMessage.getSender())) {
+            return;
+        }
+        TwoLevelCache cache = cacheMap.get(cacheMessage.getCacheName());
+        if (cache != null) {
+            log.debug("收到缓存失效消息:{}", cacheMessage);
+            cache.evictLocal(cacheMessage.getKey());
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.sky.cart;
+
+import com.sky.entity.ShoppingCart;
+
+import java.util.List;
+
+/**
+ * 购物车存储，一个商品（菜品+口味或套餐）对应购物车中的一条数据
+ */
+public interface CartStore {
+
+    /**
+     * 商品数量加1，购物车中没有该商品时，使用传入的名称、图片、价格新增一条
+     *
+     * @param shoppingCart 用户id、菜品id、口味、套餐id确定一个商品
+     */
+    void increase(ShoppingCart shoppingCart);
+
+    /**
+     * 商品数量减1，减到0时删除
+     *
+     * @param shoppingCart
+     */
+    void decrease(ShoppingCart shoppingCart);
+
+    /**
+     * 查询用户的购物车
+     *
+     * @param userId
+     * @return
+     */
+    List<ShoppingCart> list(Long userId);
+
+    /**
+     * 清空用户的购物车
+     *
+     * @param userId
+     */
+    void clean(Long userId);
+
+    /**
+     * 批量加入购物车，例如再来一单
+     *
+     * @param shoppingCartList
+     */
+    void addBatch(List<ShoppingCart> shoppingCartList);
+}
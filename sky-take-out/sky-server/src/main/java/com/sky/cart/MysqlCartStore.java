@@ -0,0 +1,55 @@
+package com.sky.cart;
+
+import com.sky.entity.ShoppingCart;
+import com.sky.mapper.ShoppingCartMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 购物车直接保存在mysql中
+ */
+@Component
+@ConditionalOnProperty(prefix = "sky.cart", name = "store", havingValue = "mysql", matchIfMissing = true)
+public class MysqlCartStore implements CartStore {
+
+    @Autowired
+    private ShoppingCartMapper shoppingCartMapper;
+
+    @Override
+    public void increase(ShoppingCart shoppingCart) {
+        //不存在时插入，存在时number + 1，一条语句完成，并发加入同一商品不会丢失数量
+        shoppingCartMapper.upsertIncrement(shoppingCart);
+    }
+
+    @Override
+    public void decrease(ShoppingCart shoppingCart) {
+        //number > 1时number - 1，否则number = 1，直接删除
+        if (shoppingCartMapper.decreaseNumber(shoppingCart) == 0) {
+            shoppingCartMapper.deleteLastOne(shoppingCart);
+        }
+    }
+
+    @Override
+    public List<ShoppingCart> list(Long userId) {
+        ShoppingCart shoppingCart = ShoppingCart.builder()
+                .userId(userId)
+                .build();
+        return shoppingCartMapper.list(shoppingCart);
+    }
+
+    @Override
+    public void clean(Long userId) {
+        shoppingCartMapper.delete(userId);
+    }
+
+    @Override
+    public void addBatch(List<ShoppingCart> shoppingCartList) {
+        if (shoppingCartList.isEmpty()) {
+            return;
+        }
+        shoppingCartMapper.insertBatch(shoppingCartList);
+    }
+}
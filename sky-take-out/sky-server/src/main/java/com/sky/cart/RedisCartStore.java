@@ -0,0 +1,266 @@
+package com.sky.cart;
+
+import com.alibaba.fastjson.JSON;
+import com.sky.entity.ShoppingCart;
+import com.sky.mapper.ShoppingCartMapper;
+import com.sky.properties.CartProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * 购物车保存在redis中，每个用户使用两个hash：
+ * sky:cart:{userId} 保存商品数量，sky:cart:item:{userId} 保存商品名称、图片、价格，field为商品标识
+ * 修改后把用户id加入待写回集合，由定时任务批量写回mysql（write-behind），关闭写回时购物车只保存在redis中
+ */
+@Component
+@ConditionalOnProperty(prefix = "sky.cart", name = "store", havingValue = "redis")
+@Slf4j
+public class RedisCartStore implements CartStore {
+
+    private static final String CART_KEY = "sky:cart:";
+    private static final String ITEM_KEY = "sky:cart:item:";
+    //待写回mysql的用户id集合
+    private static final String DIRTY_KEY = "sky:cart:dirty";
+    //数量hash中的标记field，表示购物车已从mysql加载，购物车为空时hash仍然存在
+    private static final String LOADED_FIELD = "#loaded";
+
+    /**
+     * 修改商品数量，数量减到0时删除商品
+     * KEYS: 数量hash、商品hash、待写回集合  ARGV: field、增量、商品信息（为空表示不新增商品）、过期时间、用户id、是否写回
+     * 返回修改后的数量，商品不存在且未传入商品信息时返回-1
+     */
+    private static final RedisScript<Long> CHANGE_SCRIPT = new DefaultRedisScript<>(
+            "if ARGV[3] == '' then " +
+                    "  if redis.call('HEXISTS', KEYS[1], ARGV[1]) == 0 then return -1 end " +
+                    "else " +
+                    "  redis.call('HSETNX', KEYS[2], ARGV[1], ARGV[3]) " +
+                    "end " +
+                    "local number = redis.call('HINCRBY', KEYS[1], ARGV[1], ARGV[2]) " +
+                    "if number <= 0 then " +
+                    "  redis.call('HDEL', KEYS[1], ARGV[1]) " +
+                    "  redis.call('HDEL', KEYS[2], ARGV[1]) " +
+                    "end " +
+                    "redis.call('HSETNX', KEYS[1], '" + LOADED_FIELD + "', 0) " +
+                    "redis.call('EXPIRE', KEYS[1], ARGV[4]) " +
+                    "redis.call('EXPIRE', KEYS[2], ARGV[4]) " +
+                    "if ARGV[6] == '1' then redis.call('SADD', KEYS[3], ARGV[5]) end " +
+                    "return number", Long.class);
+
+    /**
+     * 清空购物车，保留加载标记
+     * KEYS: 数量hash、商品hash、待写回集合  ARGV: 过期时间、用户id、是否写回
+     */
+    private static final RedisScript<Long> CLEAN_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('DEL', KEYS[1], KEYS[2]) " +
+                    "redis.call('HSET', KEYS[1], '" + LOADED_FIELD + "', 0) " +
+                    "redis.call('EXPIRE', KEYS[1], ARGV[1]) " +
+                    "if ARGV[3] == '1' then redis.call('SADD', KEYS[3], ARGV[2]) end " +
+                    "return 1", Long.class);
+
+    /**
+     * 从mysql加载购物车，redis中已存在时不覆盖
+     * KEYS: 数量hash、商品hash  ARGV: 过期时间，之后每三个参数为field、数量、商品信息
+     */
+    private static final RedisScript<Long> LOAD_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 1 then return 0 end " +
+                    "redis.call('HSET', KEYS[1], '" + LOADED_FIELD + "', 0) " +
+                    "for i = 2, #ARGV, 3 do " +
+                    "  redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1]) " +
+                    "  redis.call('HSET', KEYS[2], ARGV[i], ARGV[i + 2]) " +
+                    "end " +
+                    "redis.call('EXPIRE', KEYS[1], ARGV[1]) " +
+                    "redis.call('EXPIRE', KEYS[2], ARGV[1]) " +
+                    "return 1", Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private ShoppingCartMapper shoppingCartMapper;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private CartProperties cartProperties;
+
+    @Override
+    public void increase(ShoppingCart shoppingCart) {
+        ensureLoaded(shoppingCart.getUserId());
+        change(shoppingCart, 1, JSON.toJSONString(shoppingCart));
+    }
+
+    @Override
+    public void decrease(ShoppingCart shoppingCart) {
+        ensureLoaded(shoppingCart.getUserId());
+        change(shoppingCart, -1, "");
+    }
+
+    @Override
+    public List<ShoppingCart> list(Long userId) {
+        ensureLoaded(userId);
+        return read(userId);
+    }
+
+    @Override
+    public void clean(Long userId) {
+        stringRedisTemplate.execute(CLEAN_SCRIPT,
+                Arrays.asList(CART_KEY + userId, ITEM_KEY + userId, DIRTY_KEY),
+                String.valueOf(cartProperties.getTtl()),
+                String.valueOf(userId),
+                writeBehindFlag());
+    }
+
+    @Override
+    public void addBatch(List<ShoppingCart> shoppingCartList) {
+        for (ShoppingCart shoppingCart : shoppingCartList) {
+            ensureLoaded(shoppingCart.getUserId());
+            change(shoppingCart, shoppingCart.getNumber(), JSON.toJSONString(shoppingCart));
+        }
+    }
+
+    /**
+     * 把修改过的购物车写回mysql，每个用户的购物车在一个事务中整体替换
+     * 写回失败的用户重新加入待写回集合，下次继续写回
+     */
+    public void flush() {
+        if (!cartProperties.isWriteBehind()) {
+            return;
+        }
+        int count = 0;
+        List<String> userIds;
+        do {
+            userIds = stringRedisTemplate.opsForSet().pop(DIRTY_KEY, cartProperties.getFlushBatchSize());
+            if (userIds == null) {
+                break;
+            }
+            for (String userId : userIds) {
+                try {
+                    flush(Long.valueOf(userId));
+                    count++;
+                } catch (Exception e) {
+                    log.error("购物车写回mysql失败:{}", userId, e);
+                    stringRedisTemplate.opsForSet().add(DIRTY_KEY, userId);
+                }
+            }
+        } while (userIds.size() == cartProperties.getFlushBatchSize());
+        if (count > 0) {
+            log.info("购物车写回mysql，用户数:{}", count);
+        }
+    }
+
+    private void flush(Long userId) {
+        //redis中的购物车已过期时不写回，保留mysql中的数据
+        if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(CART_KEY + userId))) {
+            return;
+        }
+        List<ShoppingCart> shoppingCartList = read(userId);
+        transactionTemplate.executeWithoutResult(status -> {
+            shoppingCartMapper.delete(userId);
+            if (!shoppingCartList.isEmpty()) {
+                shoppingCartMapper.insertBatch(shoppingCartList);
+            }
+        });
+    }
+
+    /**
+     * 修改商品数量
+     *
+     * @param shoppingCart
+     * @param delta        数量增量
+     * @param item         商品信息，为空时购物车中没有该商品则不新增
+     * @return 修改后的数量，商品不存在且未传入商品信息时返回-1
+     */
+    private long change(ShoppingCart shoppingCart, int delta, String item) {
+        Long userId = shoppingCart.getUserId();
+        Long number = stringRedisTemplate.execute(CHANGE_SCRIPT,
+                Arrays.asList(CART_KEY + userId, ITEM_KEY + userId, DIRTY_KEY),
+                getField(shoppingCart),
+                String.valueOf(delta),
+                item,
+                String.valueOf(cartProperties.getTtl()),
+                String.valueOf(userId),
+                writeBehindFlag());
+        return number == null ? -1 : number;
+    }
+
+    /**
+     * 读取redis中的购物车
+     *
+     * @param userId
+     * @return
+     */
+    private List<ShoppingCart> read(Long userId) {
+        Map<Object, Object> numberMap = stringRedisTemplate.opsForHash().entries(CART_KEY + userId);
+        Map<Object, Object> itemMap = stringRedisTemplate.opsForHash().entries(ITEM_KEY + userId);
+        List<ShoppingCart> list = new ArrayList<>();
+        for (Map.Entry<Object, Object> entry : numberMap.entrySet()) {
+            Object item = itemMap.get(entry.getKey());
+            if (LOADED_FIELD.equals(entry.getKey()) || item == null) {
+                continue;
+            }
+            ShoppingCart shoppingCart = JSON.parseObject(item.toString(), ShoppingCart.class);
+            shoppingCart.setId(null);
+            shoppingCart.setUserId(userId);
+            shoppingCart.setNumber(Integer.valueOf(entry.getValue().toString()));
+            list.add(shoppingCart);
+        }
+        list.sort(Comparator.comparing(ShoppingCart::getCreateTime, Comparator.nullsLast(Comparator.naturalOrder())));
+        return list;
+    }
+
+    /**
+     * redis中没有用户的购物车时从mysql加载，只有开启写回时mysql中才有数据
+     *
+     * @param userId
+     */
+    private void ensureLoaded(Long userId) {
+        if (!cartProperties.isWriteBehind() || Boolean.TRUE.equals(stringRedisTemplate.hasKey(CART_KEY + userId))) {
+            return;
+        }
+        //同一个商品可能有多条数据，合并数量
+        Map<String, ShoppingCart> cartMap = new LinkedHashMap<>();
+        for (ShoppingCart shoppingCart : shoppingCartMapper.list(ShoppingCart.builder().userId(userId).build())) {
+            cartMap.merge(getField(shoppingCart), shoppingCart, (a, b) -> {
+                a.setNumber(a.getNumber() + b.getNumber());
+                return a;
+            });
+        }
+        List<String> args = new ArrayList<>();
+        args.add(String.valueOf(cartProperties.getTtl()));
+        for (Map.Entry<String, ShoppingCart> entry : cartMap.entrySet()) {
+            ShoppingCart shoppingCart = entry.getValue();
+            if (shoppingCart.getCreateTime() == null) {
+                shoppingCart.setCreateTime(LocalDateTime.now());
+            }
+            args.add(entry.getKey());
+            args.add(String.valueOf(shoppingCart.getNumber()));
+            args.add(JSON.toJSONString(shoppingCart));
+        }
+        stringRedisTemplate.execute(LOAD_SCRIPT, Arrays.asList(CART_KEY + userId, ITEM_KEY + userId), args.toArray());
+    }
+
+    /**
+     * 商品标识：菜品为 d:菜品id:口味，套餐为 s:套餐id
+     *
+     * @param shoppingCart
+     * @return
+     */
+    private String getField(ShoppingCart shoppingCart) {
+        if (shoppingCart.getDishId() != null) {
+            String dishFlavor = shoppingCart.getDishFlavor() == null ? "" : shoppingCart.getDishFlavor();
+            return "d:" + shoppingCart.getDishId() + ":" + dishFlavor;
+        }
+        return "s:" + shoppingCart.getSetmealId();
+    }
+
+    private String writeBehindFlag() {
+        return cartProperties.isWriteBehind() ? "1" : "0";
+    }
+}
@@ -0,0 +1,52 @@
+package com.sky.config;
+
+import com.sky.cache.RedisCacheKeyIndex;
+import com.sky.cache.TwoLevelCacheManager;
+import com.sky.properties.CacheProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.time.Duration;
+
+/**
+ * 缓存配置类，Spring Cache使用本地缓存 + redis的二级缓存
+ */
+@Configuration
+@Slf4j
+public class CacheConfiguration {
+
+    @Bean
+    public CacheManager cacheManager(RedisConnectionFactory redisConnectionFactory,
+                                     StringRedisTemplate stringRedisTemplate,
+                                     RedisMessageListenerContainer redisMessageListenerContainer,
+                                     RedisSerializer<Object> redisValueSerializer,
+                                     ThreadPoolTaskExecutor cacheRefreshExecutor,
+                                     CacheProperties cacheProperties) {
+        log.info("开始创建二级缓存管理器...");
+        //redis二级缓存，key使用统一前缀，与key索引中记录的key一致
+        RedisCacheConfiguration redisCacheConfiguration = RedisCacheConfiguration.defaultCacheConfig()
+                .computePrefixWith(RedisCacheKeyIndex::getKeyPrefix)
+                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(redisValueSerializer))
+                .entryTtl(Duration.ofSeconds(cacheProperties.getRedisTtl()));
+        RedisCacheManager redisCacheManager = RedisCacheManager.builder(redisConnectionFactory)
+                .cacheDefaults(redisCacheConfiguration)
+                .build();
+        redisCacheManager.afterPropertiesSet();
+
+        TwoLevelCacheManager cacheManager = new TwoLevelCacheManager(redisCacheManager, stringRedisTemplate, cacheProperties, cacheRefreshExecutor);
+        //订阅缓存失效广播
+        redisMessageListenerContainer.addMessageListener(cacheManager, new ChannelTopic(cacheProperties.getInvalidateTopic()));
+        return cacheManager;
+    }
+}
@@ -0,0 +1,80 @@
+package com.sky.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 配置类，用于创建业务使用的线程池
+ */
+@Configuration
+@Slf4j
+public class ExecutorConfiguration {
+
+    /**
+     * 报表导出线程池，队列满时拒绝新任务
+     * @return
+     */
+    @Bean
+    public ThreadPoolTaskExecutor reportExportExecutor() {
+        log.info("开始创建报表导出线程池...");
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(2);
+        executor.setQueueCapacity(20);
+        executor.setThreadNamePrefix("report-export-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        return executor;
+    }
+
+    /**
+     * 缓存后台刷新线程池，队列满时拒绝，由调用方放弃本次刷新
+     * @return
+     */
+    @Bean
+    public ThreadPoolTaskExecutor cacheRefreshExecutor() {
+        log.info("开始创建缓存刷新线程池...");
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(4);
+        executor.setQueueCapacity(100);
+        executor.setThreadNamePrefix("cache-refresh-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        return executor;
+    }
+
+    /**
+     * 收货地址坐标预解析线程池，队列满时拒绝，下单时再解析
+     * @return
+     */
+    @Bean
+    public ThreadPoolTaskExecutor geoExecutor() {
+        log.info("开始创建地址解析线程池...");
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(2);
+        executor.setQueueCapacity(200);
+        executor.setThreadNamePrefix("geo-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        return executor;
+    }
+
+    /**
+     * WebSocket推送线程池，单线程保证消息按顺序放入各会话的发送队列
+     * @return
+     */
+    @Bean
+    public ThreadPoolTaskExecutor webSocketExecutor() {
+        log.info("开始创建WebSocket推送线程池...");
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(1000);
+        executor.setThreadNamePrefix("websocket-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        return executor;
+    }
+}
@@ -0,0 +1,88 @@
+package com.sky.config;
+
+import com.sky.properties.HttpClientProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.function.ToDoubleFunction;
+
+/**
+ * 配置类，用于创建调用微信、百度地图等外部接口的连接池HttpClient
+ */
+@Configuration
+@Slf4j
+public class HttpClientConfiguration {
+
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager httpClientConnectionManager(HttpClientProperties httpClientProperties) {
+        log.info("开始创建http连接池:{}", httpClientProperties);
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(httpClientProperties.getMaxTotal());
+        connectionManager.setDefaultMaxPerRoute(httpClientProperties.getMaxPerRoute());
+        //连接空闲超过1秒后使用前先检查是否可用，避免使用已被服务端关闭的连接
+        connectionManager.setValidateAfterInactivity(1000);
+        return connectionManager;
+    }
+
+    @Bean
+    public RequestConfig httpClientRequestConfig(HttpClientProperties httpClientProperties) {
+        return RequestConfig.custom()
+                .setConnectTimeout(httpClientProperties.getConnectTimeout())
+                .setConnectionRequestTimeout(httpClientProperties.getConnectionRequestTimeout())
+                .setSocketTimeout(httpClientProperties.getSocketTimeout())
+                .build();
+    }
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient httpClient(PoolingHttpClientConnectionManager httpClientConnectionManager,
+                                          RequestConfig httpClientRequestConfig,
+                                          HttpClientProperties httpClientProperties) {
+
+        //服务端返回了Keep-Alive时按服务端的时间，否则使用配置的保持时间
+        ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+            long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return keepAlive > 0 ? keepAlive : httpClientProperties.getKeepAlive();
+        };
+
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(httpClientConnectionManager)
+                //连接池由Spring管理，关闭HttpClient时不关闭连接池
+                .setConnectionManagerShared(true)
+                .setDefaultRequestConfig(httpClientRequestConfig)
+                .setKeepAliveStrategy(keepAliveStrategy)
+                .build();
+        return httpClient;
+    }
+
+    /**
+     * 连接池使用情况指标，通过 /actuator/metrics/httpclient.pool.* 查看
+     */
+    @Bean
+    public MeterBinder httpClientPoolMetrics(PoolingHttpClientConnectionManager httpClientConnectionManager) {
+        return registry -> {
+            registerPoolGauge(registry, httpClientConnectionManager, "httpclient.pool.leased", "使用中的连接数", PoolStats::getLeased);
+            registerPoolGauge(registry, httpClientConnectionManager, "httpclient.pool.available", "空闲的连接数", PoolStats::getAvailable);
+            registerPoolGauge(registry, httpClientConnectionManager, "httpclient.pool.pending", "等待获取连接的请求数", PoolStats::getPending);
+            registerPoolGauge(registry, httpClientConnectionManager, "httpclient.pool.max", "最大连接数", PoolStats::getMax);
+        };
+    }
+
+    private void registerPoolGauge(MeterRegistry registry,
+                                   PoolingHttpClientConnectionManager connectionManager,
+                                   String name, String description, ToDoubleFunction<PoolStats> value) {
+        Gauge.builder(name, connectionManager, manager -> value.applyAsDouble(manager.getTotalStats()))
+                .description(description)
+                .register(registry);
+    }
+}
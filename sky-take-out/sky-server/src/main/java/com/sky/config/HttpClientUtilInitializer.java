@@ -0,0 +1,28 @@
+package com.sky.config;
+
+import com.sky.utils.HttpClientUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * 把Spring管理的连接池HttpClient设置到静态工具类HttpClientUtil中
+ */
+@Component
+@Slf4j
+public class HttpClientUtilInitializer implements InitializingBean {
+
+    @Autowired
+    private CloseableHttpClient httpClient;
+    @Autowired
+    private RequestConfig httpClientRequestConfig;
+
+    @Override
+    public void afterPropertiesSet() {
+        HttpClientUtil.init(httpClient, httpClientRequestConfig);
+        log.info("HttpClientUtil已使用连接池HttpClient初始化");
+    }
+}
@@ -1,10 +1,14 @@
 package com.sky.config;
 
+import com.sky.cache.CompactRedisSerializer;
+import com.sky.properties.CacheProperties;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 @Slf4j
@@ -12,13 +16,40 @@ import org.springframework.data.redis.serializer.StringRedisSerializer;
 public class RedisConfiguration {
 
     @Bean
-    public RedisTemplate redisTemplate(RedisConnectionFactory redisConnectionFactory){
+    public RedisTemplate redisTemplate(RedisConnectionFactory redisConnectionFactory, RedisSerializer<Object> redisValueSerializer){
         log.info("开始创建redis模板对象...");
         RedisTemplate redisTemplate = new RedisTemplate();
         //设置redis连接工厂对象
         redisTemplate.setConnectionFactory(redisConnectionFactory);
         //设置redis key序列化器
         redisTemplate.setKeySerializer(new StringRedisSerializer());
+        redisTemplate.setHashKeySerializer(new StringRedisSerializer());
+        //设置redis value序列化器，代替默认的JDK序列化
+        redisTemplate.setValueSerializer(redisValueSerializer);
+        redisTemplate.setHashValueSerializer(redisValueSerializer);
         return redisTemplate;
     }
+
+    /**
+     * redis value序列化器，RedisTemplate和Spring Cache共用
+     * @param cacheProperties
+     * @return
+     */
+    @Bean
+    public RedisSerializer<Object> redisValueSerializer(CacheProperties cacheProperties){
+        log.info("redis value序列化格式:{}", cacheProperties.getSerializer());
+        return new CompactRedisSerializer(cacheProperties.getSerializer(), cacheProperties.getCompressThreshold());
+    }
+
+    /**
+     * redis消息监听容器，用于订阅缓存失效等广播消息
+     * @param redisConnectionFactory
+     * @return
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory redisConnectionFactory){
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        return container;
+    }
 }
@@ -1,13 +1,21 @@
 package com.sky.config;
 
+import com.sky.properties.WebSocketProperties;
+import com.sky.websocket.WebSocketMessageListener;
+import com.sky.websocket.WebSocketServer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.web.socket.server.standard.ServerEndpointExporter;
 
 /**
  * WebSocket配置类，用于注册WebSocket的Bean
  */
 @Configuration
+@Slf4j
 public class WebSocketConfiguration {
 
     @Bean
@@ -15,4 +23,19 @@ public class WebSocketConfiguration {
         return new ServerEndpointExporter();
     }
 
+    /**
+     * 多实例部署时订阅WebSocket消息频道
+     * @return
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "sky.websocket", name = "cluster", havingValue = "true", matchIfMissing = true)
+    public WebSocketMessageListener webSocketMessageListener(WebSocketServer webSocketServer,
+                                                             RedisMessageListenerContainer redisMessageListenerContainer,
+                                                             WebSocketProperties webSocketProperties) {
+        log.info("订阅WebSocket消息频道:{}", webSocketProperties.getTopic());
+        WebSocketMessageListener listener = new WebSocketMessageListener(webSocketServer);
+        redisMessageListenerContainer.addMessageListener(listener, new ChannelTopic(webSocketProperties.getTopic()));
+        return listener;
+    }
+
 }
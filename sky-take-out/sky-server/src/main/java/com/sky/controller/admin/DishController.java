@@ -6,16 +6,21 @@ import com.sky.entity.Dish;
 import com.sky.result.PageResult;
 import com.sky.result.Result;
 import com.sky.service.DishService;
+import com.sky.service.ProductCatalogService;
 import com.sky.vo.DishVO;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Set;
+import java.util.Objects;
 
 @RequestMapping("/admin/dish")
 @RestController
@@ -26,7 +31,9 @@ public class DishController {
     @Autowired
     private DishService dishService;
     @Autowired
-    private RedisTemplate redisTemplate;
+    private CacheManager cacheManager;
+    @Autowired
+    private ProductCatalogService productCatalogService;
 
     /**
      * 新增菜品
@@ -36,12 +43,10 @@ public class DishController {
      */
     @PostMapping
     @ApiOperation("新增菜品")
+    @CacheEvict(cacheNames = "dishListCache",key = "#dishDTO.categoryId") //精准删除缓存
     public Result save(@RequestBody DishDTO dishDTO) {
         log.info("新增菜品:{}", dishDTO);
         dishService.saveWithFlavor(dishDTO);
-        //清理缓存
-        String key = "dish_*" + dishDTO.getCategoryId();
-        cleanCache(key);
         return Result.success();
     }
 
@@ -69,9 +74,11 @@ public class DishController {
     @DeleteMapping
     public Result delete(@RequestParam List<Long> ids) {
         log.info("根据id批量删除菜品和对应口味:{}", ids);
+        //删除前查询菜品所属分类，只清理这些分类的缓存
+        List<Long> categoryIds = dishService.getCategoryIds(ids);
         dishService.deleteBatch(ids);
-        //清理缓存
-        cleanCache("dish_*");
+        cleanCache(categoryIds);
+        productCatalogService.evictDishes(ids);
         return Result.success();
     }
 
@@ -101,9 +108,12 @@ public class DishController {
     @PutMapping
     public Result update(@RequestBody DishDTO dishDTO) {
         log.info("修改菜品:{}", dishDTO);
+        //菜品可能修改了分类，原分类和新分类的缓存都需要清理
+        List<Long> categoryIds = new ArrayList<>(dishService.getCategoryIds(Collections.singletonList(dishDTO.getId())));
         dishService.updateDishWithFlavor(dishDTO);
-        //清理缓存
-        cleanCache("dish_*");
+        categoryIds.add(dishDTO.getCategoryId());
+        cleanCache(categoryIds);
+        productCatalogService.evictDishes(Collections.singletonList(dishDTO.getId()));
         return Result.success();
     }
 
@@ -118,8 +128,8 @@ public class DishController {
     public Result startOrStop(@PathVariable("status") Integer status, Long id) {
         log.info("菜品起售停售:{},{}",status,id);
         dishService.startOrStop(status,id);
-        //清理缓存
-        cleanCache("dish_*");
+        cleanCache(dishService.getCategoryIds(Collections.singletonList(id)));
+        productCatalogService.evictDishes(Collections.singletonList(id));
         return Result.success();
     }
 
@@ -138,11 +148,14 @@ public class DishController {
     }
 
     /**
-     * 清理缓存数据
-     * @param pattern
+     * 清理指定分类的菜品缓存
+     * @param categoryIds
      */
-    private void cleanCache(String pattern){
-        Set keys = redisTemplate.keys(pattern);
-        redisTemplate.delete(keys);
+    private void cleanCache(List<Long> categoryIds){
+        Cache cache = cacheManager.getCache("dishListCache");
+        categoryIds.stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .forEach(cache::evict);
     }
 }
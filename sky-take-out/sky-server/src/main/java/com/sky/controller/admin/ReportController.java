@@ -1,8 +1,13 @@
 package com.sky.controller.admin;
 
+import com.sky.constant.MessageConstant;
+import com.sky.exception.ReportBusinessException;
 import com.sky.result.Result;
+import com.sky.service.ReportExportService;
 import com.sky.service.ReportService;
+import com.sky.task.BusinessStatsTask;
 import com.sky.vo.OrderReportVO;
+import com.sky.vo.ReportExportJobVO;
 import com.sky.vo.SalesTop10ReportVO;
 import com.sky.vo.TurnoverReportVO;
 import com.sky.vo.UserReportVO;
@@ -11,11 +16,16 @@ import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
-import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
 
 /**
@@ -27,8 +37,18 @@ import java.time.LocalDate;
 @Slf4j
 public class ReportController {
 
+    //Tomcat零拷贝发送文件相关的请求属性
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
     @Autowired
     private ReportService reportService;
+    @Autowired
+    private ReportExportService reportExportService;
+    @Autowired
+    private BusinessStatsTask businessStatsTask;
 
     /**
      * 营业额统计
@@ -96,13 +116,105 @@ public class ReportController {
 
 
     /**
-     * 导出运营数据报表
+     * 全量营业数据对账，修正每日对账区间之外的历史数据
+     * @return
+     */
+    @ApiOperation("全量营业数据对账")
+    @PostMapping("/reconcile")
+    public Result<String> reconcile() {
+        log.info("全量营业数据对账");
+        if (businessStatsTask.reconcileAllBusinessStats() == null) {
+            throw new ReportBusinessException(MessageConstant.REPORT_RECONCILE_BUSY);
+        }
+        return Result.success();
+    }
+
+
+    /**
+     * 导出运营数据报表，不指定区间时导出最近30天
+     * @param begin
+     * @param end
      * @param response
      */
     @ApiOperation("导出运营数据报表")
     @GetMapping("/export")
-    public void export(HttpServletResponse response){
-        reportService.exportBusinesData(response);
+    public void export(
+            @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate begin,
+            @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate end,
+            HttpServletResponse response) throws IOException {
+        log.info("导出运营数据报表:{},{}", begin, end);
+        if (begin != null && end != null && begin.isAfter(end)) {
+            throw new ReportBusinessException(MessageConstant.REPORT_DATE_RANGE_ERROR);
+        }
+        response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+        if (begin == null || end == null) {
+            reportService.exportBusinesData(response);
+            return;
+        }
+        ServletOutputStream sos = response.getOutputStream();
+        reportService.exportBusinesData(begin, end, sos);
+        sos.close();
+    }
+
+    /**
+     * 提交运营数据报表导出任务，后台生成文件，避免大区间导出长时间占用请求线程
+     * @param begin
+     * @param end
+     * @return
+     */
+    @ApiOperation("提交运营数据报表导出任务")
+    @PostMapping("/export/jobs")
+    public Result<ReportExportJobVO> submitExportJob(
+            @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate begin,
+            @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate end) {
+        log.info("提交运营数据报表导出任务:{},{}", begin, end);
+        if (begin == null || end == null) {
+            throw new ReportBusinessException(MessageConstant.REPORT_DATE_RANGE_ERROR);
+        }
+        return Result.success(reportExportService.submit(begin, end));
+    }
+
+    /**
+     * 查询导出任务状态
+     * @param jobId
+     * @return
+     */
+    @ApiOperation("查询导出任务状态")
+    @GetMapping("/export/jobs/{jobId}")
+    public Result<ReportExportJobVO> getExportJob(@PathVariable String jobId) {
+        return Result.success(reportExportService.getJob(jobId));
+    }
+
+    /**
+     * 下载导出任务生成的文件，容器支持时使用sendfile直接发送文件
+     * @param jobId
+     * @param request
+     * @param response
+     */
+    @ApiOperation("下载导出文件")
+    @GetMapping("/export/jobs/{jobId}/file")
+    public void downloadExportFile(@PathVariable String jobId,
+                                   HttpServletRequest request,
+                                   HttpServletResponse response) throws IOException {
+        ReportExportJobVO job = reportExportService.getJob(jobId);
+        Path file = reportExportService.getFile(jobId);
+        long length = Files.size(file);
+
+        String fileName = URLEncoder.encode("运营数据报表_" + job.getBegin() + "_" + job.getEnd() + ".xlsx",
+                StandardCharsets.UTF_8.name()).replace("+", "%20");
+        response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+        response.setHeader("Content-Disposition", "attachment;filename*=UTF-8''" + fileName);
+        response.setContentLengthLong(length);
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, 0L);
+            request.setAttribute(SENDFILE_END, length);
+            return;
+        }
+        ServletOutputStream sos = response.getOutputStream();
+        Files.copy(file, sos);
+        sos.flush();
     }
 
 }
@@ -4,6 +4,7 @@ import com.sky.dto.SetmealDTO;
 import com.sky.dto.SetmealPageQueryDTO;
 import com.sky.result.PageResult;
 import com.sky.result.Result;
+import com.sky.service.ProductCatalogService;
 import com.sky.service.SetmealService;
 import com.sky.vo.SetmealVO;
 import io.swagger.annotations.Api;
@@ -13,6 +14,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Collections;
 import java.util.List;
 
 @Slf4j
@@ -22,6 +24,8 @@ import java.util.List;
 public class SetmealController {
     @Autowired
     private SetmealService setmealService;
+    @Autowired
+    private ProductCatalogService productCatalogService;
 
     /**
      * 新增套餐
@@ -31,7 +35,7 @@ public class SetmealController {
      */
     @ApiOperation("新增套餐")
     @PostMapping
-    @CacheEvict(cacheNames = "setmealCache",key = "#setmealDTO.categoryId") //精准删除缓存
+    @CacheEvict(cacheNames = "setmealListCache",key = "#setmealDTO.categoryId") //精准删除缓存
     public Result save(@RequestBody SetmealDTO setmealDTO) {
         log.info("新增套餐:{}", setmealDTO);
         setmealService.saveWithDish(setmealDTO);
@@ -61,10 +65,11 @@ public class SetmealController {
      */
     @ApiOperation("批量删除套餐")
     @DeleteMapping
-    @CacheEvict(cacheNames = "setmealCache",allEntries = true) //全部删除缓存
+    @CacheEvict(cacheNames = "setmealListCache",allEntries = true) //全部删除缓存
     public Result delete(@RequestParam List<Long> ids) {
         log.info("批量删除套餐:{}", ids);
         setmealService.deleteByIds(ids);
+        productCatalogService.evictSetmeals(ids);
         return Result.success();
     }
 
@@ -88,10 +93,11 @@ public class SetmealController {
      */
     @ApiOperation("修改套餐信息")
     @PutMapping
-    @CacheEvict(cacheNames = "setmealCache",allEntries = true) //全部删除缓存
+    @CacheEvict(cacheNames = "setmealListCache",allEntries = true) //全部删除缓存
     public Result update(@RequestBody SetmealDTO setmealDTO) {
         log.info("修改套餐信息:{}",setmealDTO);
         setmealService.update(setmealDTO);
+        productCatalogService.evictSetmeals(Collections.singletonList(setmealDTO.getId()));
         return Result.success();
     }
 
@@ -103,10 +109,11 @@ public class SetmealController {
      */
     @ApiOperation("起售停售套餐信息")
     @PostMapping("status/{status}")
-    @CacheEvict(cacheNames = "setmealCache",allEntries = true) //全部删除缓存
+    @CacheEvict(cacheNames = "setmealListCache",allEntries = true) //全部删除缓存
     public Result startOrStop(@PathVariable Integer status,Long id){
         log.info("起售停售套餐信息:{},{}",status,id);
         setmealService.startOrStop(status,id);
+        productCatalogService.evictSetmeals(Collections.singletonList(id));
         return Result.success();
     }
 
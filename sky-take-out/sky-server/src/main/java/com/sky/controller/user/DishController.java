@@ -10,7 +10,6 @@ import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
@@ -25,8 +24,6 @@ public class DishController {
 
     @Autowired
     private DishService dishService;
-    @Autowired
-    private RedisTemplate redisTemplate;
 
     /**
      * 根据菜品分类id查询菜品以及相关口味
@@ -37,21 +34,12 @@ public class DishController {
     @ApiOperation("根据菜品分类id查询菜品以及相关口味")
     public Result<List<DishVO>> list(Long categoryId){
         log.info("根据菜品分类id查询菜品以及相关口味:{}",categoryId);
-        //构造redis中的key 规则：dish_分类id
-        String key = "dish_" + categoryId;
-        //查询redis中是否有数据
-        List<DishVO> dishVOList = (List<DishVO>) redisTemplate.opsForValue().get(key);
-        if (dishVOList != null && dishVOList.size() > 0){
-            //如果存在直接返回缓存数据，无序额外查询数据库
-            return Result.success(dishVOList);
-        }
         //只查询起售的菜品，所以设置菜品状态
         Dish dish =  new Dish();
         dish.setStatus(StatusConstant.ENABLE);
         dish.setCategoryId(categoryId);
-        //查询菜品,如果不存在吧，把查询到的数据存到redis中
-        dishVOList =  dishService.listWithFlavor(dish);
-        redisTemplate.opsForValue().set(key,dishVOList);
+        //菜品列表在service中缓存，缓存后台刷新时只重新执行service方法
+        List<DishVO> dishVOList =  dishService.listWithFlavor(dish);
         return Result.success(dishVOList);
     }
 
@@ -51,8 +51,8 @@ public class PayNotifyController {
         log.info("商户平台订单号：{}", outTradeNo);
         log.info("微信支付交易号：{}", transactionId);
 
-        //业务处理，修改订单状态、来单提醒
-        orderService.paySuccess(outTradeNo);
+        //业务处理，修改订单状态、来单提醒，微信重复回调时不会重复处理
+        orderService.paySuccess(outTradeNo, transactionId);
 
         //给微信响应
         responseToWeixin(response);
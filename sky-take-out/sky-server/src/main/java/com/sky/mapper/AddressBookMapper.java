@@ -26,6 +26,7 @@ public interface AddressBookMapper {
             "         district_name, detail, label, is_default)" +
             "        values (#{userId}, #{consignee}, #{phone}, #{sex}, #{provinceCode}, #{provinceName}, #{cityCode}, #{cityName}," +
             "                #{districtCode}, #{districtName}, #{detail}, #{label}, #{isDefault})")
+    @Options(useGeneratedKeys = true, keyProperty = "id")
     void insert(AddressBook addressBook);
 
     /**
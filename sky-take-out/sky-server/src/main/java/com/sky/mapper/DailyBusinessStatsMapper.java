@@ -0,0 +1,57 @@
+package com.sky.mapper;
+
+import com.sky.entity.DailyBusinessStats;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Select;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Mapper
+public interface DailyBusinessStatsMapper {
+
+    /**
+     * 增量累加某一天的营业数据，当天没有记录时插入
+     * @param dailyBusinessStats
+     */
+    void increase(DailyBusinessStats dailyBusinessStats);
+
+    /**
+     * 批量覆盖写入每天的营业数据，用于对账修正，数据没有变化的日期不修改更新时间
+     * @param statsList
+     */
+    void insertOrUpdateBatch(List<DailyBusinessStats> statsList);
+
+    /**
+     * 查询指定区间内每天的营业数据
+     * @param begin
+     * @param end
+     * @return
+     */
+    @Select("select * from daily_business_stats where stat_date between #{begin} and #{end} order by stat_date")
+    List<DailyBusinessStats> list(LocalDate begin, LocalDate end);
+
+    /**
+     * 查询指定区间内汇总数据的最后更新时间
+     * @param begin
+     * @param end
+     * @return
+     */
+    @Select("select max(update_time) from daily_business_stats where stat_date between #{begin} and #{end}")
+    LocalDateTime getLastUpdateTime(LocalDate begin, LocalDate end);
+
+    /**
+     * 统计汇总记录数量
+     * @return
+     */
+    @Select("select count(*) from daily_business_stats")
+    Integer count();
+
+    /**
+     * 查询最早有订单或用户数据的日期
+     * @return
+     */
+    @Select("select min(d) from (select min(date(order_time)) d from orders union all select min(date(create_time)) d from user) t")
+    LocalDate getEarliestDate();
+}
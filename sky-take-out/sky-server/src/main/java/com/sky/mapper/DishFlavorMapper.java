@@ -36,4 +36,11 @@ public interface DishFlavorMapper {
      */
     @Select("select * from dish_flavor where dish_id = #{id} ")
     List<DishFlavor> getByDishId(Long id);
+
+    /**
+     * 优化--根据菜品id批量查询口味数据
+     * @param dishIds
+     * @return
+     */
+    List<DishFlavor> getByDishIds(List<Long> dishIds);
 }
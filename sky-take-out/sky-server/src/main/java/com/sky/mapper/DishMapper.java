@@ -91,6 +91,14 @@ public interface DishMapper {
     @Select("select a.* from dish a left join setmeal_dish b on a.id = b.dish_id where b.setmeal_id = #{setmealId}")
     List<Dish> getBySetmealId(Long setmealId);
 
+    /**
+     * 根据菜品id集合查询所属的分类id
+     *
+     * @param ids
+     * @return
+     */
+    List<Long> getCategoryIdsByIds(List<Long> ids);
+
     /**
      * 根据条件统计菜品数量
      * @param map
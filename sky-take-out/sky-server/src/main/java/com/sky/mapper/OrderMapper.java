@@ -1,6 +1,7 @@
 package com.sky.mapper;
 
 import com.github.pagehelper.Page;
+import com.sky.dto.DailyOrderStatDTO;
 import com.sky.dto.GoodsSalesDTO;
 import com.sky.dto.OrdersPageQueryDTO;
 import com.sky.entity.Orders;
@@ -60,6 +61,13 @@ public interface OrderMapper {
      */
     Page<Orders> pageQuery(OrdersPageQueryDTO ordersPageQueryDTO);
 
+    /**
+     * 商家端分页条件查询，关联地址簿拼接完整收货地址
+     * @param ordersPageQueryDTO
+     * @return
+     */
+    Page<Orders> pageQueryWithAddress(OrdersPageQueryDTO ordersPageQueryDTO);
+
     /**
      * 根据id查询订单
      * @param id
@@ -86,6 +94,53 @@ public interface OrderMapper {
     @Select("select * from orders where status = #{status} and order_time < #{orderTime}")
     List<Orders> getByStatusAndOrderTimeoutLT(Integer status,LocalDateTime orderTime);
 
+    /**
+     * 订单处于指定状态时才修改，修改状态、取消原因、拒单原因、取消时间、送达时间
+     * @param orders
+     * @param fromStatuses 允许修改的当前状态
+     * @param refundIfPaid 为true时已支付的订单支付状态改为退款
+     * @return 修改的订单数，为0表示订单不存在或状态不符
+     */
+    Integer updateByIdAndStatus(Orders orders, List<Integer> fromStatuses, Boolean refundIfPaid);
+
+    /**
+     * 支付成功，订单为待付款且未支付时才修改订单状态、支付状态和结账时间，
+     * 修改成功时通过last_insert_id把订单id回填到orders中
+     * @param orders 订单号、修改后的状态、支付状态和结账时间
+     * @return 修改的订单数，为0表示订单不存在或已处理过
+     */
+    Integer paySuccess(Orders orders);
+
+    /**
+     * 根据订单状态和下单时间按id分批查询订单的id、下单时间和金额
+     * @param status
+     * @param orderTime 下单时间早于该时间，为空时不限制
+     * @param afterId 从大于该id的订单开始查询，为空时从头查询
+     * @param shardTotal 分片总数，大于1时只查询 id % shardTotal = shardIndex 的订单
+     * @param shardIndex
+     * @param limit
+     * @return
+     */
+    List<Orders> listByStatusAndOrderTimeLT(Integer status, LocalDateTime orderTime, Long afterId,
+                                            Integer shardTotal, Integer shardIndex, Integer limit);
+
+    /**
+     * 批量修改订单状态，只修改当前状态为fromStatus的订单
+     * @param ids
+     * @param fromStatus
+     * @param orders 修改后的状态、取消原因、取消时间
+     * @return 修改的订单数
+     */
+    Integer updateStatusByIds(List<Long> ids, Integer fromStatus, Orders orders);
+
+    /**
+     * 查询并锁定指定id中当前状态为status的订单的id、下单时间和金额，需在事务中调用
+     * @param ids
+     * @param status
+     * @return
+     */
+    List<Orders> listByIdsAndStatusForUpdate(List<Long> ids, Integer status);
+
     /**
      * 统计指定区间营业额数据
      * @param map
@@ -107,4 +162,13 @@ public interface OrderMapper {
      * @return
      */
     List<GoodsSalesDTO> getSalesTop10(LocalDateTime begin,LocalDateTime end);
+
+    /**
+     * 按天分组统计指定区间内（包含两端）的订单总数、有效订单数和营业额
+     * @param begin
+     * @param end
+     * @param status 有效订单状态
+     * @return
+     */
+    List<DailyOrderStatDTO> countGroupByDay(LocalDateTime begin, LocalDateTime end, Integer status);
 }
@@ -0,0 +1,18 @@
+package com.sky.mapper;
+
+import com.sky.entity.PayNotifyLog;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+
+@Mapper
+public interface PayNotifyLogMapper {
+
+    /**
+     * 记录支付回调，同一交易号已存在时忽略
+     * @param payNotifyLog
+     * @return 插入的记录数，为0表示重复回调
+     */
+    @Insert("insert ignore into pay_notify_log (transaction_id, out_trade_no, create_time) " +
+            "values (#{transactionId}, #{outTradeNo}, #{createTime})")
+    Integer insertIgnore(PayNotifyLog payNotifyLog);
+}
@@ -26,6 +26,29 @@ public interface ShoppingCartMapper {
     @Update("update shopping_cart set  number = #{number}  where id = #{id}")
     void updateNumberById(ShoppingCart shoppingCart);
 
+    /**
+     * 加入购物车，商品已存在时数量加1，不存在时插入，通过line_key唯一索引保证一个商品只有一条数据
+     *
+     * @param shoppingCart
+     */
+    void upsertIncrement(ShoppingCart shoppingCart);
+
+    /**
+     * 商品数量大于1时数量减1
+     *
+     * @param shoppingCart
+     * @return 修改的行数，为0表示商品不存在或数量为1
+     */
+    int decreaseNumber(ShoppingCart shoppingCart);
+
+    /**
+     * 商品数量为1时删除
+     *
+     * @param shoppingCart
+     * @return
+     */
+    int deleteLastOne(ShoppingCart shoppingCart);
+
     /**
      * 插入购物车数据
      *
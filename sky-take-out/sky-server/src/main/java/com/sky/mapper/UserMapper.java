@@ -1,9 +1,12 @@
 package com.sky.mapper;
 
+import com.sky.dto.DailyUserStatDTO;
 import com.sky.entity.User;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Select;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Map;
 
 @Mapper
@@ -37,4 +40,12 @@ public interface UserMapper {
      * @return
      */
     Integer countByMap(Map map);
+
+    /**
+     * 按天分组统计指定区间内（包含两端）的新增用户数量
+     * @param begin
+     * @param end
+     * @return
+     */
+    List<DailyUserStatDTO> countGroupByDay(LocalDateTime begin, LocalDateTime end);
 }
@@ -0,0 +1,14 @@
+package com.sky.order;
+
+/**
+ * 订单号生成器
+ */
+public interface OrderNumberGenerator {
+
+    /**
+     * 生成一个全局唯一的订单号
+     *
+     * @return
+     */
+    String nextNumber();
+}
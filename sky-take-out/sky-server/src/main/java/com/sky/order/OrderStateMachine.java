@@ -0,0 +1,154 @@
+package com.sky.order;
+
+import com.sky.constant.MessageConstant;
+import com.sky.entity.Orders;
+import com.sky.exception.OrderBusinessException;
+import com.sky.mapper.OrderMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 订单状态流转
+ * 每次流转都是一条带当前状态条件的update语句，订单状态已被其他操作修改时不会覆盖，直接提示订单状态错误
+ * 订单状态 1待付款 2待接单 3已接单 4派送中 5已完成 6已取消
+ */
+@Component
+public class OrderStateMachine {
+
+    //用户可以直接取消的状态
+    private static final List<Integer> USER_CANCELABLE = Arrays.asList(Orders.PENDING_PAYMENT, Orders.TO_BE_CONFIRMED);
+    //商家可以取消的状态
+    private static final List<Integer> ADMIN_CANCELABLE = Arrays.asList(
+            Orders.PENDING_PAYMENT, Orders.TO_BE_CONFIRMED, Orders.CONFIRMED, Orders.DELIVERY_IN_PROGRESS);
+
+    @Autowired
+    private OrderMapper orderMapper;
+
+    /**
+     * 接单：待接单 -> 已接单
+     *
+     * @param id
+     */
+    public void confirm(Long id) {
+        Orders orders = Orders.builder()
+                .id(id)
+                .status(Orders.CONFIRMED)
+                .build();
+        transition(orders, Arrays.asList(Orders.TO_BE_CONFIRMED), false);
+    }
+
+    /**
+     * 拒单：待接单 -> 已取消，已支付的订单退款
+     *
+     * @param id
+     * @param rejectionReason
+     */
+    public void reject(Long id, String rejectionReason) {
+        Orders orders = Orders.builder()
+                .id(id)
+                .status(Orders.CANCELLED)
+                .rejectionReason(rejectionReason)
+                .cancelTime(LocalDateTime.now())
+                .build();
+        transition(orders, Arrays.asList(Orders.TO_BE_CONFIRMED), true);
+    }
+
+    /**
+     * 用户取消：待付款、待接单 -> 已取消，已支付的订单退款
+     *
+     * @param id
+     */
+    public void cancelByUser(Long id) {
+        Orders orders = Orders.builder()
+                .id(id)
+                .status(Orders.CANCELLED)
+                .cancelReason("用户取消")
+                .cancelTime(LocalDateTime.now())
+                .build();
+        transition(orders, USER_CANCELABLE, true);
+    }
+
+    /**
+     * 商家取消：未完成的订单 -> 已取消，已支付的订单退款
+     *
+     * @param id
+     * @param cancelReason
+     */
+    public void cancelByAdmin(Long id, String cancelReason) {
+        Orders orders = Orders.builder()
+                .id(id)
+                .status(Orders.CANCELLED)
+                .cancelReason(cancelReason)
+                .cancelTime(LocalDateTime.now())
+                .build();
+        transition(orders, ADMIN_CANCELABLE, true);
+    }
+
+    /**
+     * 派送：已接单 -> 派送中
+     *
+     * @param id
+     */
+    public void deliver(Long id) {
+        Orders orders = Orders.builder()
+                .id(id)
+                .status(Orders.DELIVERY_IN_PROGRESS)
+                .build();
+        transition(orders, Arrays.asList(Orders.CONFIRMED), false);
+    }
+
+    /**
+     * 完成：派送中 -> 已完成，需在事务中调用
+     * 先锁定派送中的订单再修改，修改成功的订单即为锁定的订单
+     *
+     * @param id
+     * @return 完成的订单的id、下单时间和金额，用于累加营业数据
+     */
+    public Orders complete(Long id) {
+        List<Orders> ordersList = orderMapper.listByIdsAndStatusForUpdate(
+                Collections.singletonList(id), Orders.DELIVERY_IN_PROGRESS);
+        if (ordersList.isEmpty()) {
+            throw transitionFailed(id);
+        }
+        Orders orders = Orders.builder()
+                .id(id)
+                .status(Orders.COMPLETED)
+                .deliveryTime(LocalDateTime.now())
+                .build();
+        transition(orders, Arrays.asList(Orders.DELIVERY_IN_PROGRESS), false);
+        return ordersList.get(0);
+    }
+
+    /**
+     * 订单处于fromStatuses中的状态时修改，否则抛出业务异常
+     *
+     * @param orders
+     * @param fromStatuses
+     * @param refundIfPaid
+     */
+    private void transition(Orders orders, List<Integer> fromStatuses, boolean refundIfPaid) {
+        Integer count = orderMapper.updateByIdAndStatus(orders, fromStatuses, refundIfPaid);
+        if (count != null && count > 0) {
+            return;
+        }
+        throw transitionFailed(orders.getId());
+    }
+
+    /**
+     * 修改失败时才查询一次，区分订单不存在和状态不符
+     *
+     * @param id
+     * @return
+     */
+    private OrderBusinessException transitionFailed(Long id) {
+        if (orderMapper.getById(id) == null) {
+            return new OrderBusinessException(MessageConstant.ORDER_NOT_FOUND);
+        }
+        return new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
+    }
+}
@@ -0,0 +1,127 @@
+package com.sky.order;
+
+import com.sky.entity.Orders;
+import com.sky.properties.OrderProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 待付款订单的超时队列
+ * 使用redis有序集合，成员为订单id，分数为超时时间的毫秒数，到期后由定时任务取出并取消订单
+ */
+@Component
+@Slf4j
+public class OrderTimeoutQueue {
+
+    private static final String QUEUE_KEY = "sky:order:timeout";
+
+    //取出到期的订单并从队列中删除，多个实例同时取出时每个订单只会被一个实例取到
+    private static final DefaultRedisScript<List<String>> POLL_SCRIPT = createPollScript();
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private OrderProperties orderProperties;
+
+    /**
+     * 订单加入超时队列
+     *
+     * @param orders
+     */
+    public void add(Orders orders) {
+        try {
+            stringRedisTemplate.opsForZSet().add(QUEUE_KEY, orders.getId().toString(), getDeadline(orders.getOrderTime()));
+        } catch (Exception e) {
+            //加入失败时由兜底任务取消
+            log.error("订单加入超时队列失败:{}", orders.getId(), e);
+        }
+    }
+
+    /**
+     * 批量加入超时队列，用于启动时根据数据库重建队列
+     *
+     * @param ordersList
+     */
+    public void addAll(List<Orders> ordersList) {
+        if (ordersList.isEmpty()) {
+            return;
+        }
+        Set<ZSetOperations.TypedTuple<String>> tuples = new HashSet<>();
+        for (Orders orders : ordersList) {
+            tuples.add(new DefaultTypedTuple<>(orders.getId().toString(), getDeadline(orders.getOrderTime())));
+        }
+        stringRedisTemplate.opsForZSet().add(QUEUE_KEY, tuples);
+    }
+
+    /**
+     * 订单已支付或已取消，从超时队列中删除
+     *
+     * @param orderId
+     */
+    public void remove(Long orderId) {
+        try {
+            stringRedisTemplate.opsForZSet().remove(QUEUE_KEY, orderId.toString());
+        } catch (Exception e) {
+            //未删除的订单到期后按状态条件更新，不会误取消
+            log.warn("订单移出超时队列失败:{},{}", orderId, e.getMessage());
+        }
+    }
+
+    /**
+     * 取出已到期的订单id
+     *
+     * @param limit
+     * @return
+     */
+    public List<Long> pollExpired(int limit) {
+        List<String> ids = stringRedisTemplate.execute(POLL_SCRIPT, Collections.singletonList(QUEUE_KEY),
+                String.valueOf(System.currentTimeMillis()), String.valueOf(limit));
+        if (ids == null || ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return ids.stream().map(Long::valueOf).collect(Collectors.toList());
+    }
+
+    /**
+     * 返回值为字符串列表的脚本，结果由StringRedisTemplate按字符串反序列化
+     *
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    private static DefaultRedisScript<List<String>> createPollScript() {
+        DefaultRedisScript<List<String>> script = new DefaultRedisScript<>();
+        script.setScriptText("local ids = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, ARGV[2]) " +
+                "if #ids > 0 then " +
+                "  redis.call('ZREM', KEYS[1], unpack(ids)) " +
+                "end " +
+                "return ids");
+        script.setResultType((Class<List<String>>) (Class<?>) List.class);
+        return script;
+    }
+
+    /**
+     * 计算订单的超时时间
+     *
+     * @param orderTime
+     * @return
+     */
+    private double getDeadline(LocalDateTime orderTime) {
+        return orderTime.plusSeconds(orderProperties.getPayTimeout())
+                .atZone(ZoneId.systemDefault())
+                .toInstant()
+                .toEpochMilli();
+    }
+}
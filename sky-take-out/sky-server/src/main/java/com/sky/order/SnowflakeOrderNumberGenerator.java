@@ -0,0 +1,173 @@
+package com.sky.order;
+
+import com.sky.constant.MessageConstant;
+import com.sky.exception.OrderBusinessException;
+import com.sky.properties.OrderProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 雪花算法订单号生成器
+ * 订单号由 41位毫秒时间戳 + 10位机器id + 12位序列号 组成，单个实例每毫秒最多生成4096个，
+ * 时间戳和序列号放在同一个AtomicLong中通过CAS更新，不需要加锁
+ * 机器id从redis租用时，租约超过有效期仍未续约成功就停止生成订单号，避免与租到同一机器id的实例重复
+ */
+@Component
+@Slf4j
+public class SnowflakeOrderNumberGenerator implements OrderNumberGenerator {
+
+    //时间戳的起点 2023-01-01 00:00:00 UTC，41位时间戳可以使用约69年
+    private static final long EPOCH = 1672531200000L;
+
+    private static final int WORKER_ID_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_WORKER_ID = (1L << WORKER_ID_BITS) - 1;
+
+    private static final String WORKER_KEY_PREFIX = "sky:order:worker:";
+
+    //租约仍属于当前实例时续期
+    private static final RedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then " +
+                    "  return redis.call('PEXPIRE', KEYS[1], ARGV[2]) " +
+                    "end " +
+                    "return 0", Long.class);
+
+    //租约仍属于当前实例时释放
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then " +
+                    "  return redis.call('DEL', KEYS[1]) " +
+                    "end " +
+                    "return 0", Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private OrderProperties orderProperties;
+
+    //高位为相对EPOCH的毫秒数，低12位为该毫秒内的序列号
+    private final AtomicLong state = new AtomicLong();
+
+    //租用机器id时写入redis的值，用于区分租约属于哪个实例
+    private final String leaseToken = UUID.randomUUID().toString();
+
+    private volatile long workerId;
+    //机器id是否从redis租用
+    private boolean leased;
+    //最近一次租用或续约成功时发出请求的时间（System.nanoTime），租约从这个时间开始计算有效期
+    private volatile long leaseRenewedAt;
+
+    @PostConstruct
+    public void init() {
+        Long configured = orderProperties.getWorkerId();
+        if (configured != null) {
+            if (configured < 0 || configured > MAX_WORKER_ID) {
+                throw new IllegalStateException("sky.order.worker-id 取值范围为0~" + MAX_WORKER_ID + "：" + configured);
+            }
+            workerId = configured;
+        } else {
+            long start = System.nanoTime();
+            workerId = lease();
+            leaseRenewedAt = start;
+            leased = true;
+        }
+        log.info("订单号生成器机器id：{}", workerId);
+    }
+
+    /**
+     * 生成订单号
+     * 当前毫秒大于上次的时间戳时序列号从0开始，否则在上次的基础上加1；
+     * 序列号用完或时钟回拨时自然进位到下一毫秒，保证单调递增
+     *
+     * @return
+     */
+    @Override
+    public String nextNumber() {
+        if (leased && System.nanoTime() - leaseRenewedAt >= TimeUnit.SECONDS.toNanos(orderProperties.getWorkerLeaseTtl())) {
+            //租约可能已过期，机器id可能已被其他实例租走
+            log.error("订单号机器id租约已超过有效期未续约:{}", workerId);
+            throw new OrderBusinessException(MessageConstant.ORDER_NUMBER_UNAVAILABLE);
+        }
+        long next;
+        while (true) {
+            long last = state.get();
+            next = Math.max((System.currentTimeMillis() - EPOCH) << SEQUENCE_BITS, last + 1);
+            if (state.compareAndSet(last, next)) {
+                break;
+            }
+        }
+        long timestamp = next >>> SEQUENCE_BITS;
+        long sequence = next & ((1L << SEQUENCE_BITS) - 1);
+        long id = timestamp << (WORKER_ID_BITS + SEQUENCE_BITS) | workerId << SEQUENCE_BITS | sequence;
+        return String.valueOf(id);
+    }
+
+    /**
+     * 定时续约redis中的机器id，租约丢失时重新租用
+     */
+    @Scheduled(fixedDelayString = "${sky.order.worker-lease-renew-interval:20000}")
+    public void renewLease() {
+        if (!leased) {
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            Long renewed = stringRedisTemplate.execute(RENEW_SCRIPT,
+                    Collections.singletonList(WORKER_KEY_PREFIX + workerId),
+                    leaseToken, String.valueOf(TimeUnit.SECONDS.toMillis(orderProperties.getWorkerLeaseTtl())));
+            if (renewed == null || renewed == 0) {
+                //租约已过期并可能被其他实例租走，换一个机器id
+                long old = workerId;
+                workerId = lease();
+                log.warn("订单号机器id租约丢失，{} 更换为 {}", old, workerId);
+            }
+            leaseRenewedAt = start;
+        } catch (Exception e) {
+            //redis暂时不可用时等待下次续约，租约有效期内机器id仍然可用，超过有效期后停止生成订单号
+            log.error("订单号机器id续约失败:{}", workerId, e);
+        }
+    }
+
+    @PreDestroy
+    public void releaseLease() {
+        if (!leased) {
+            return;
+        }
+        try {
+            stringRedisTemplate.execute(RELEASE_SCRIPT,
+                    Collections.singletonList(WORKER_KEY_PREFIX + workerId), leaseToken);
+        } catch (Exception e) {
+            log.warn("释放订单号机器id失败:{}", workerId, e);
+        }
+    }
+
+    /**
+     * 从随机位置开始依次尝试租用一个空闲的机器id
+     *
+     * @return
+     */
+    private long lease() {
+        long start = ThreadLocalRandom.current().nextLong(MAX_WORKER_ID + 1);
+        for (long i = 0; i <= MAX_WORKER_ID; i++) {
+            long id = (start + i) & MAX_WORKER_ID;
+            Boolean success = stringRedisTemplate.opsForValue().setIfAbsent(WORKER_KEY_PREFIX + id, leaseToken,
+                    orderProperties.getWorkerLeaseTtl(), TimeUnit.SECONDS);
+            if (Boolean.TRUE.equals(success)) {
+                return id;
+            }
+        }
+        throw new IllegalStateException("没有可用的订单号机器id");
+    }
+}
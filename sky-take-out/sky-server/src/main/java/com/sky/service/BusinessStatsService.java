@@ -0,0 +1,60 @@
+package com.sky.service;
+
+import com.sky.entity.DailyBusinessStats;
+import com.sky.entity.Orders;
+import com.sky.entity.User;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public interface BusinessStatsService {
+
+    /**
+     * 用户下单，累加下单当天的订单总数
+     * @param orders
+     */
+    void orderSubmitted(Orders orders);
+
+    /**
+     * 订单完成，累加下单当天的有效订单数和营业额
+     * @param orders
+     */
+    void orderCompleted(Orders orders);
+
+    /**
+     * 批量完成订单，按下单日期汇总后累加有效订单数和营业额
+     * @param ordersList
+     */
+    void ordersCompleted(List<Orders> ordersList);
+
+    /**
+     * 新用户注册，累加注册当天的新增用户数
+     * @param user
+     */
+    void userRegistered(User user);
+
+    /**
+     * 查询指定区间内每天的营业数据，没有数据的日期补0
+     * @param begin
+     * @param end
+     * @return
+     */
+    List<DailyBusinessStats> list(LocalDate begin, LocalDate end);
+
+    /**
+     * 根据订单表和用户表重新计算指定区间内每天的营业数据
+     * @param begin
+     * @param end
+     */
+    void reconcile(LocalDate begin, LocalDate end);
+
+    /**
+     * 根据订单表和用户表重新计算从最早数据到昨天的全部营业数据
+     */
+    void reconcileAll();
+
+    /**
+     * 汇总表为空时，根据历史数据全量生成
+     */
+    void initIfEmpty();
+}
@@ -63,4 +63,11 @@ public interface DishService {
      * @return
      */
     List<DishVO> listWithFlavor(Dish dish);
+
+    /**
+     * 根据菜品id集合查询所属的分类id
+     * @param ids
+     * @return
+     */
+    List<Long> getCategoryIds(List<Long> ids);
 }
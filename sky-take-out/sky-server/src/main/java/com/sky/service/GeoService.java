@@ -0,0 +1,24 @@
+package com.sky.service;
+
+import com.sky.entity.AddressBook;
+
+public interface GeoService {
+
+    /**
+     * 检查收货地址是否超出配送范围，超出时抛出异常
+     * @param addressBook
+     */
+    void checkDeliveryRange(AddressBook addressBook);
+
+    /**
+     * 异步解析收货地址坐标并缓存，下单时不再调用地图接口
+     * @param addressBook
+     */
+    void prepareAsync(AddressBook addressBook);
+
+    /**
+     * 收货地址修改或删除后清理缓存
+     * @param addressBookId
+     */
+    void evict(Long addressBookId);
+}
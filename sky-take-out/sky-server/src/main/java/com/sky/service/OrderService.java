@@ -29,6 +29,13 @@ public interface OrderService {
      */
     void paySuccess(String outTradeNo);
 
+    /**
+     * 支付成功，修改订单状态，同一交易号的重复回调只处理一次
+     * @param outTradeNo
+     * @param transactionId 微信支付交易号，为空时只依据订单状态去重
+     */
+    void paySuccess(String outTradeNo, String transactionId);
+
 
     /**
      * 用户端历史订单查询
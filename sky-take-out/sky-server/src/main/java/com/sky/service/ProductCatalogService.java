@@ -0,0 +1,34 @@
+package com.sky.service;
+
+import com.sky.dto.ProductDTO;
+
+import java.util.List;
+
+public interface ProductCatalogService {
+
+    /**
+     * 根据id查询菜品基本信息
+     * @param id
+     * @return
+     */
+    ProductDTO getDish(Long id);
+
+    /**
+     * 根据id查询套餐基本信息
+     * @param id
+     * @return
+     */
+    ProductDTO getSetmeal(Long id);
+
+    /**
+     * 菜品修改、删除、起售停售后清理缓存
+     * @param ids
+     */
+    void evictDishes(List<Long> ids);
+
+    /**
+     * 套餐修改、删除、起售停售后清理缓存
+     * @param ids
+     */
+    void evictSetmeals(List<Long> ids);
+}
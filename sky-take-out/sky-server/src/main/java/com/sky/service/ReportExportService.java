@@ -0,0 +1,36 @@
+package com.sky.service;
+
+import com.sky.vo.ReportExportJobVO;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+public interface ReportExportService {
+
+    /**
+     * 提交运营数据报表导出任务
+     * @param begin
+     * @param end
+     * @return
+     */
+    ReportExportJobVO submit(LocalDate begin, LocalDate end);
+
+    /**
+     * 查询导出任务状态
+     * @param jobId
+     * @return
+     */
+    ReportExportJobVO getJob(String jobId);
+
+    /**
+     * 获取已完成的导出任务生成的文件
+     * @param jobId
+     * @return
+     */
+    Path getFile(String jobId);
+
+    /**
+     * 清理过期的导出任务和文件，并按保留天数和总大小清理报表缓存
+     */
+    void cleanExpired();
+}
@@ -7,6 +7,8 @@ import com.sky.vo.TurnoverReportVO;
 import com.sky.vo.UserReportVO;
 
 import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.LocalDate;
 
 public interface ReportService {
@@ -43,8 +45,16 @@ public interface ReportService {
     SalesTop10ReportVO getSalesTop10(LocalDate begin, LocalDate end);
 
     /**
-     * 导出运营数据报表
+     * 导出最近30天的运营数据报表
      * @param response
      */
     void exportBusinesData(HttpServletResponse response);
+
+    /**
+     * 导出指定区间内的运营数据报表
+     * @param begin
+     * @param end
+     * @param out
+     */
+    void exportBusinesData(LocalDate begin, LocalDate end, OutputStream out) throws IOException;
 }
@@ -4,7 +4,9 @@ import com.sky.vo.BusinessDataVO;
 import com.sky.vo.DishOverViewVO;
 import com.sky.vo.OrderOverViewVO;
 import com.sky.vo.SetmealOverViewVO;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.List;
 
 public interface WorkspaceService {
 
@@ -16,6 +18,14 @@ public interface WorkspaceService {
      */
     BusinessDataVO getBusinessData(LocalDateTime begin, LocalDateTime end);
 
+    /**
+     * 统计指定区间内每一天的营业数据
+     * @param begin
+     * @param end
+     * @return
+     */
+    List<BusinessDataVO> getDailyBusinessData(LocalDate begin, LocalDate end);
+
     /**
      * 查询订单管理数据
      * @return
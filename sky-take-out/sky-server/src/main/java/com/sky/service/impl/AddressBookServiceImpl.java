@@ -4,6 +4,7 @@ import com.sky.context.BaseContext;
 import com.sky.entity.AddressBook;
 import com.sky.mapper.AddressBookMapper;
 import com.sky.service.AddressBookService;
+import com.sky.service.GeoService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -16,6 +17,8 @@ import java.util.List;
 public class AddressBookServiceImpl implements AddressBookService {
     @Autowired
     private AddressBookMapper addressBookMapper;
+    @Autowired
+    private GeoService geoService;
 
     /**
      * 条件查询
@@ -36,6 +39,8 @@ public class AddressBookServiceImpl implements AddressBookService {
         addressBook.setUserId(BaseContext.getCurrentId());
         addressBook.setIsDefault(0);
         addressBookMapper.insert(addressBook);
+        //提前解析收货地址坐标，下单时不再调用地图接口
+        geoService.prepareAsync(addressBook);
     }
 
     /**
@@ -56,6 +61,9 @@ public class AddressBookServiceImpl implements AddressBookService {
      */
     public void update(AddressBook addressBook) {
         addressBookMapper.update(addressBook);
+        //地址修改后清理缓存的坐标和配送距离，重新解析
+        geoService.evict(addressBook.getId());
+        geoService.prepareAsync(addressBookMapper.getById(addressBook.getId()));
     }
 
     /**
@@ -82,6 +90,7 @@ public class AddressBookServiceImpl implements AddressBookService {
      */
     public void deleteById(Long id) {
         addressBookMapper.deleteById(id);
+        geoService.evict(id);
     }
 
 }
@@ -0,0 +1,194 @@
+package com.sky.service.impl;
+
+import com.sky.dto.DailyOrderStatDTO;
+import com.sky.dto.DailyUserStatDTO;
+import com.sky.entity.DailyBusinessStats;
+import com.sky.entity.Orders;
+import com.sky.entity.User;
+import com.sky.mapper.DailyBusinessStatsMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.mapper.UserMapper;
+import com.sky.service.BusinessStatsService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+@Slf4j
+public class BusinessStatsServiceImpl implements BusinessStatsService {
+
+    //对账时每批写入的天数
+    private static final int BATCH_SIZE = 500;
+
+    @Autowired
+    private DailyBusinessStatsMapper dailyBusinessStatsMapper;
+    @Autowired
+    private OrderMapper orderMapper;
+    @Autowired
+    private UserMapper userMapper;
+
+    /**
+     * 用户下单，累加下单当天的订单总数
+     *
+     * @param orders
+     */
+    public void orderSubmitted(Orders orders) {
+        dailyBusinessStatsMapper.increase(emptyStats(orders.getOrderTime().toLocalDate())
+                .orderCount(1)
+                .build());
+    }
+
+    /**
+     * 订单完成，累加下单当天的有效订单数和营业额
+     *
+     * @param orders
+     */
+    public void orderCompleted(Orders orders) {
+        //报表按下单时间统计，所以累加到下单的那一天
+        dailyBusinessStatsMapper.increase(emptyStats(orders.getOrderTime().toLocalDate())
+                .completedCount(1)
+                .turnover(orders.getAmount())
+                .build());
+    }
+
+    /**
+     * 批量完成订单，按下单日期汇总后每天累加一次
+     *
+     * @param ordersList
+     */
+    public void ordersCompleted(List<Orders> ordersList) {
+        Map<LocalDate, List<Orders>> ordersMap = ordersList.stream()
+                .collect(Collectors.groupingBy(orders -> orders.getOrderTime().toLocalDate()));
+        ordersMap.forEach((date, list) -> dailyBusinessStatsMapper.increase(emptyStats(date)
+                .completedCount(list.size())
+                .turnover(list.stream().map(Orders::getAmount).reduce(BigDecimal.ZERO, BigDecimal::add))
+                .build()));
+    }
+
+    /**
+     * 新用户注册，累加注册当天的新增用户数
+     *
+     * @param user
+     */
+    public void userRegistered(User user) {
+        dailyBusinessStatsMapper.increase(emptyStats(user.getCreateTime().toLocalDate())
+                .newUsers(1)
+                .build());
+    }
+
+    /**
+     * 查询指定区间内每天的营业数据，没有数据的日期补0
+     *
+     * @param begin
+     * @param end
+     * @return
+     */
+    public List<DailyBusinessStats> list(LocalDate begin, LocalDate end) {
+        Map<LocalDate, DailyBusinessStats> statsMap = dailyBusinessStatsMapper.list(begin, end).stream()
+                .collect(Collectors.toMap(DailyBusinessStats::getStatDate, Function.identity()));
+
+        List<DailyBusinessStats> statsList = new ArrayList<>();
+        for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+            DailyBusinessStats stats = statsMap.get(date);
+            statsList.add(stats != null ? stats : emptyStats(date).build());
+        }
+        return statsList;
+    }
+
+    /**
+     * 根据订单表和用户表重新计算指定区间内每天的营业数据
+     *
+     * @param begin
+     * @param end
+     */
+    public void reconcile(LocalDate begin, LocalDate end) {
+        log.info("营业数据对账:{} 至 {}", begin, end);
+        LocalDateTime beginTime = LocalDateTime.of(begin, LocalTime.MIN);
+        LocalDateTime endTime = LocalDateTime.of(end, LocalTime.MAX);
+
+        //各用一次分组查询拿到区间内每天的订单数据和新增用户数据
+        Map<LocalDate, DailyOrderStatDTO> orderStatMap = orderMapper.countGroupByDay(beginTime, endTime, Orders.COMPLETED)
+                .stream()
+                .collect(Collectors.toMap(DailyOrderStatDTO::getDate, Function.identity()));
+        Map<LocalDate, Integer> newUserMap = userMapper.countGroupByDay(beginTime, endTime)
+                .stream()
+                .collect(Collectors.toMap(DailyUserStatDTO::getDate, DailyUserStatDTO::getNewUsers));
+
+        //没有数据的日期也要写入0，覆盖掉增量累加时可能产生的偏差
+        List<DailyBusinessStats> statsList = new ArrayList<>();
+        for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+            DailyBusinessStats.DailyBusinessStatsBuilder builder = emptyStats(date)
+                    .newUsers(newUserMap.getOrDefault(date, 0));
+            DailyOrderStatDTO orderStat = orderStatMap.get(date);
+            if (orderStat != null) {
+                builder.orderCount(orderStat.getOrderCount())
+                        .completedCount(orderStat.getValidOrderCount())
+                        .turnover(orderStat.getTurnover() == null ? BigDecimal.ZERO : orderStat.getTurnover());
+            }
+            statsList.add(builder.build());
+
+            if (statsList.size() == BATCH_SIZE) {
+                dailyBusinessStatsMapper.insertOrUpdateBatch(statsList);
+                statsList = new ArrayList<>();
+            }
+        }
+        if (statsList.size() > 0) {
+            dailyBusinessStatsMapper.insertOrUpdateBatch(statsList);
+        }
+    }
+
+    /**
+     * 根据订单表和用户表重新计算从最早数据到昨天的全部营业数据
+     * 用于修正每晚对账区间之外的历史数据偏差，当天的数据仍在增量更新，不在修正范围内
+     */
+    public void reconcileAll() {
+        LocalDate earliestDate = dailyBusinessStatsMapper.getEarliestDate();
+        LocalDate end = LocalDate.now().minusDays(1);
+        if (earliestDate == null || earliestDate.isAfter(end)) {
+            return;
+        }
+        reconcile(earliestDate, end);
+    }
+
+    /**
+     * 汇总表为空时，根据历史数据全量生成
+     */
+    public void initIfEmpty() {
+        Integer count = dailyBusinessStatsMapper.count();
+        if (count != null && count > 0) {
+            return;
+        }
+        LocalDate earliestDate = dailyBusinessStatsMapper.getEarliestDate();
+        if (earliestDate == null) {
+            //还没有任何订单和用户数据
+            return;
+        }
+        reconcile(earliestDate, LocalDate.now());
+    }
+
+    /**
+     * 构建某一天各项数据都为0的汇总对象
+     *
+     * @param date
+     * @return
+     */
+    private DailyBusinessStats.DailyBusinessStatsBuilder emptyStats(LocalDate date) {
+        return DailyBusinessStats.builder()
+                .statDate(date)
+                .orderCount(0)
+                .completedCount(0)
+                .turnover(BigDecimal.ZERO)
+                .newUsers(0)
+                .updateTime(LocalDateTime.now());
+    }
+}
@@ -17,11 +17,14 @@ import com.sky.service.DishService;
 import com.sky.vo.DishVO;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @Service
 public class DishServiceImpl implements DishService {
@@ -193,23 +196,46 @@ public class DishServiceImpl implements DishService {
 
     /**
      * 条件查询菜品和口味
+     * C端查询起售菜品时缓存，key: dishListCache::10，先查本地缓存再查redis，后台刷新时只重新执行本方法
      * @param dish
      * @return
      */
     @Override
+    @Cacheable(cacheNames = "dishListCache", key = "#dish.categoryId", sync = true,
+            condition = "#dish.categoryId != null and #dish.status == T(com.sky.constant.StatusConstant).ENABLE")
     public List<DishVO> listWithFlavor(Dish dish) {
         List<Dish> dishList = dishMapper.list(dish);
         List<DishVO> dishVOList =  new ArrayList<>();
+        if (dishList.isEmpty()) {
+            return dishVOList;
+        }
+        //一次查询出所有菜品的口味，再按菜品id分组
+        List<Long> dishIds = dishList.stream().map(Dish::getId).collect(Collectors.toList());
+        Map<Long, List<DishFlavor>> flavorMap = dishFlavorMapper.getByDishIds(dishIds).stream()
+                .collect(Collectors.groupingBy(DishFlavor::getDishId));
         for (Dish d : dishList) {
             DishVO dishVO = new DishVO();
             //拷贝属性
             BeanUtils.copyProperties(d,dishVO);
-            //根据菜品id查询对应口味
-            List<DishFlavor> flavors = dishFlavorMapper.getByDishId(d.getId());
+            //根据菜品id获取对应口味
+            List<DishFlavor> flavors = flavorMap.getOrDefault(d.getId(), new ArrayList<>());
             //设置vo属性
             dishVO.setFlavors(flavors);
             dishVOList.add(dishVO);
         }
         return dishVOList;
     }
+
+    /**
+     * 根据菜品id集合查询所属的分类id
+     * @param ids
+     * @return
+     */
+    @Override
+    public List<Long> getCategoryIds(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return dishMapper.getCategoryIdsByIds(ids);
+    }
 }
@@ -0,0 +1,227 @@
+package com.sky.service.impl;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.sky.dto.GeoLocationDTO;
+import com.sky.entity.AddressBook;
+import com.sky.exception.OrderBusinessException;
+import com.sky.properties.DeliveryProperties;
+import com.sky.properties.ShopProperties;
+import com.sky.service.GeoService;
+import com.sky.utils.HttpClientUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 配送范围校验
+ * 店铺坐标只解析一次，收货地址坐标和驾车距离按地址id缓存在geoCache中
+ * 驾车距离不会小于直线距离，直线距离超出范围时直接拒绝，否则以路线规划的驾车距离为准
+ */
+@Service
+@Slf4j
+public class GeoServiceImpl implements GeoService {
+
+    private static final String CACHE_NAME = "geoCache";
+    private static final String GEOCODING_URL = "https://api.map.baidu.com/geocoding/v3";
+    private static final String DRIVING_URL = "https://api.map.baidu.com/directionlite/v1/driving";
+    //地球平均半径（米）
+    private static final double EARTH_RADIUS = 6371000;
+
+    @Value("${sky.baidu.ak}")
+    private String ak;
+
+    @Autowired
+    private ShopProperties shopProperties; //商家地址 用百度地图定位
+    @Autowired
+    private DeliveryProperties deliveryProperties;
+    @Autowired
+    private CacheManager cacheManager;
+    @Autowired
+    private ThreadPoolTaskExecutor geoExecutor;
+
+    //店铺坐标
+    private volatile GeoLocationDTO shopLocation;
+
+    /**
+     * 启动时解析店铺坐标，失败时在下单时重试
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void initShopLocation() {
+        try {
+            getShopLocation();
+        } catch (Exception e) {
+            log.warn("店铺地址解析失败，下单时重试:{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 检查收货地址是否超出配送范围，超出时抛出异常
+     *
+     * @param addressBook
+     */
+    public void checkDeliveryRange(AddressBook addressBook) {
+        int maxDistance = deliveryProperties.getMaxDistance();
+        GeoLocationDTO shop = getShopLocation();
+        GeoLocationDTO location = getLocation(addressBook);
+
+        //直线距离超出范围时驾车距离一定超出，不再调用路线规划
+        if (getStraightDistance(shop, location) > maxDistance) {
+            throw new OrderBusinessException("超出配送范围");
+        }
+
+        //驾车距离和坐标一起按地址id缓存，同一地址只规划一次
+        //缓存中的对象可能被其他线程同时读取，写入新对象而不是修改原对象
+        if (location.getDistance() == null) {
+            location = GeoLocationDTO.builder()
+                    .lat(location.getLat())
+                    .lng(location.getLng())
+                    .distance(getDrivingDistance(shop, location))
+                    .build();
+            cacheManager.getCache(CACHE_NAME).put(addressBook.getId(), location);
+        }
+        if (location.getDistance() > maxDistance) {
+            //配送距离超过配送范围
+            throw new OrderBusinessException("超出配送范围");
+        }
+    }
+
+    /**
+     * 异步解析收货地址坐标并缓存，下单时不再调用地图接口
+     *
+     * @param addressBook
+     */
+    public void prepareAsync(AddressBook addressBook) {
+        if (addressBook == null || addressBook.getId() == null) {
+            return;
+        }
+        try {
+            geoExecutor.execute(() -> {
+                try {
+                    getLocation(addressBook);
+                } catch (Exception e) {
+                    log.warn("收货地址解析失败:{},{}", addressBook.getId(), e.getMessage());
+                }
+            });
+        } catch (TaskRejectedException e) {
+            //线程池繁忙时跳过，下单时再解析
+            log.debug("收货地址预解析被拒绝:{}", addressBook.getId());
+        }
+    }
+
+    /**
+     * 收货地址修改或删除后清理缓存
+     *
+     * @param addressBookId
+     */
+    public void evict(Long addressBookId) {
+        cacheManager.getCache(CACHE_NAME).evict(addressBookId);
+    }
+
+    private GeoLocationDTO getShopLocation() {
+        GeoLocationDTO location = shopLocation;
+        if (location == null) {
+            location = geocode(shopProperties.getAddress(), "店铺地址解析失败");
+            shopLocation = location;
+            log.info("店铺坐标:{},{}", location.getLat(), location.getLng());
+        }
+        return location;
+    }
+
+    /**
+     * 查询收货地址坐标，缓存中没有时调用地图接口解析
+     *
+     * @param addressBook
+     * @return
+     */
+    private GeoLocationDTO getLocation(AddressBook addressBook) {
+        Cache cache = cacheManager.getCache(CACHE_NAME);
+        GeoLocationDTO location = cache.get(addressBook.getId(), GeoLocationDTO.class);
+        if (location == null) {
+            String address = addressBook.getCityName() + addressBook.getDistrictName() + addressBook.getDetail();
+            location = geocode(address, "收货地址解析失败");
+            cache.put(addressBook.getId(), location);
+        }
+        return location;
+    }
+
+    /**
+     * 调用地图接口解析地址的经纬度坐标
+     *
+     * @param address
+     * @param errorMessage
+     * @return
+     */
+    private GeoLocationDTO geocode(String address, String errorMessage) {
+        Map<String, String> map = new HashMap<>();
+        map.put("address", address);
+        map.put("output", "json");
+        map.put("ak", ak);
+
+        String json = HttpClientUtil.doGet(GEOCODING_URL, map);
+        JSONObject jsonObject = JSON.parseObject(json);
+        if (jsonObject == null || !"0".equals(jsonObject.getString("status"))) {
+            throw new OrderBusinessException(errorMessage);
+        }
+
+        //数据解析
+        JSONObject location = jsonObject.getJSONObject("result").getJSONObject("location");
+        return GeoLocationDTO.builder()
+                .lat(location.getDouble("lat"))
+                .lng(location.getDouble("lng"))
+                .build();
+    }
+
+    /**
+     * 调用地图接口规划驾车路线，返回距离（米）
+     *
+     * @param origin
+     * @param destination
+     * @return
+     */
+    private Integer getDrivingDistance(GeoLocationDTO origin, GeoLocationDTO destination) {
+        Map<String, String> map = new HashMap<>();
+        map.put("origin", origin.getLat() + "," + origin.getLng());
+        map.put("destination", destination.getLat() + "," + destination.getLng());
+        map.put("steps_info", "0");
+        map.put("ak", ak);
+
+        String json = HttpClientUtil.doGet(DRIVING_URL, map);
+        JSONObject jsonObject = JSON.parseObject(json);
+        if (jsonObject == null || !"0".equals(jsonObject.getString("status"))) {
+            throw new OrderBusinessException("配送路线规划失败");
+        }
+
+        //数据解析
+        JSONArray routes = jsonObject.getJSONObject("result").getJSONArray("routes");
+        return routes.getJSONObject(0).getInteger("distance");
+    }
+
+    /**
+     * 按haversine公式计算两点间的球面直线距离（米）
+     *
+     * @param a
+     * @param b
+     * @return
+     */
+    private double getStraightDistance(GeoLocationDTO a, GeoLocationDTO b) {
+        double lat1 = Math.toRadians(a.getLat());
+        double lat2 = Math.toRadians(b.getLat());
+        double deltaLat = lat2 - lat1;
+        double deltaLng = Math.toRadians(b.getLng() - a.getLng());
+        double h = Math.sin(deltaLat / 2) * Math.sin(deltaLat / 2)
+                + Math.cos(lat1) * Math.cos(lat2) * Math.sin(deltaLng / 2) * Math.sin(deltaLng / 2);
+        return 2 * EARTH_RADIUS * Math.asin(Math.sqrt(h));
+    }
+}
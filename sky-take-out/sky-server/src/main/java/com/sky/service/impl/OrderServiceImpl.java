@@ -1,10 +1,10 @@
 package com.sky.service.impl;
 
 import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
 import com.github.pagehelper.Page;
 import com.github.pagehelper.PageHelper;
+import com.sky.cart.CartStore;
 import com.sky.constant.MessageConstant;
 
 import com.sky.context.BaseContext;
@@ -14,22 +14,29 @@ import com.sky.exception.AddressBookBusinessException;
 import com.sky.exception.OrderBusinessException;
 import com.sky.exception.ShoppingCartBusinessException;
 import com.sky.mapper.*;
+import com.sky.order.OrderNumberGenerator;
+import com.sky.order.OrderStateMachine;
+import com.sky.order.OrderTimeoutQueue;
+import com.sky.properties.ShopProperties;
 import com.sky.result.PageResult;
 
+import com.sky.service.BusinessStatsService;
+import com.sky.service.GeoService;
 import com.sky.service.OrderService;
-import com.sky.utils.HttpClientUtil;
 import com.sky.utils.WeChatPayUtil;
 import com.sky.vo.OrderPaymentVO;
 import com.sky.vo.OrderStatisticsVO;
 import com.sky.vo.OrderSubmitVO;
 import com.sky.vo.OrderVO;
 import com.sky.websocket.WebSocketServer;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.CollectionUtils;
 
 import java.math.BigDecimal;
@@ -41,6 +48,7 @@ import java.util.Map;
 import java.util.stream.Collectors;
 
 @Service
+@Slf4j
 public class OrderServiceImpl implements OrderService {
 
     @Autowired
@@ -50,7 +58,7 @@ public class OrderServiceImpl implements OrderService {
     @Autowired
     private AddressBookMapper addressBookMapper;
     @Autowired
-    private ShoppingCartMapper shoppingCartMapper;
+    private CartStore cartStore;
     @Autowired
     private WeChatPayUtil weChatPayUtil;
     @Autowired
@@ -59,11 +67,23 @@ public class OrderServiceImpl implements OrderService {
     //public String orderNumber;
     @Autowired
     private WebSocketServer webSocketServer;
+    @Autowired
+    private ShopProperties shopProperties;
+    @Autowired
+    private OrderTimeoutQueue orderTimeoutQueue;
+    @Autowired
+    private OrderStateMachine orderStateMachine;
+    @Autowired
+    private OrderNumberGenerator orderNumberGenerator;
+    @Autowired
+    private BusinessStatsService businessStatsService;
 
-    @Value("${sky.shop.address}")
-    private String shopAddress; //注入配置文件中的商家地址 用百度地图定位
-    @Value("${sky.baidu.ak}")
-    private String ak;
+    @Autowired
+    private GeoService geoService;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private PayNotifyLogMapper payNotifyLogMapper;
 
     /**
      * 用户下订单
@@ -71,7 +91,6 @@ public class OrderServiceImpl implements OrderService {
      * @param ordersSubmitDTO
      * @return
      */
-    @Transactional
     public OrderSubmitVO submitOrder(OrdersSubmitDTO ordersSubmitDTO) {
         //1.判断用户提交的数据（地址簿、购物车）是否为空，为空则抛出业务异常
         Long addressBookId = ordersSubmitDTO.getAddressBookId();
@@ -81,15 +100,37 @@ public class OrderServiceImpl implements OrderService {
             throw new AddressBookBusinessException(MessageConstant.ADDRESS_BOOK_IS_NULL);
         }
 
-        //检查用户的收货地址是否超出配送范围
-        checkOutOfRange(addressBook.getCityName() + addressBook.getDistrictName() + addressBook.getDetail());
+        //检查用户的收货地址是否超出配送范围，在开启事务之前调用地图接口，避免远程调用占用数据库连接
+        geoService.checkDeliveryRange(addressBook);
 
         //判断购物车数据是否为空
         Long userId = BaseContext.getCurrentId();
+        OrderSubmitVO orderSubmitVO = transactionTemplate.execute(status -> doSubmitOrder(ordersSubmitDTO, addressBook, userId));
+        //事务提交后加入超时队列，到期未付款自动取消
+        orderTimeoutQueue.add(Orders.builder()
+                .id(orderSubmitVO.getId())
+                .orderTime(orderSubmitVO.getOrderTime())
+                .build());
+        //事务提交后累加当天的订单总数，所有下单都更新同一行汇总数据，放在事务中会持有行锁直到提交；失败时由每晚对账修正
+        try {
+            businessStatsService.orderSubmitted(Orders.builder().orderTime(orderSubmitVO.getOrderTime()).build());
+        } catch (Exception e) {
+            log.error("累加订单统计失败，订单id：{}", orderSubmitVO.getId(), e);
+        }
+        return orderSubmitVO;
+    }
+
+    /**
+     * 在事务中保存订单和订单明细，事务提交后清空购物车
+     *
+     * @param ordersSubmitDTO
+     * @param addressBook
+     * @param userId
+     * @return
+     */
+    private OrderSubmitVO doSubmitOrder(OrdersSubmitDTO ordersSubmitDTO, AddressBook addressBook, Long userId) {
 
-        ShoppingCart shoppingCart = new ShoppingCart();
-        shoppingCart.setUserId(userId);
-        List<ShoppingCart> shoppingCartList = shoppingCartMapper.list(shoppingCart);
+        List<ShoppingCart> shoppingCartList = cartStore.list(userId);
         if (shoppingCartList == null || shoppingCartList.size() == 0) {
             //抛出业务异常
             throw new ShoppingCartBusinessException(MessageConstant.SHOPPING_CART_IS_NULL);
@@ -100,7 +141,7 @@ public class OrderServiceImpl implements OrderService {
         orders.setOrderTime(LocalDateTime.now());
         orders.setPayStatus(Orders.UN_PAID);
         orders.setStatus(Orders.PENDING_PAYMENT);
-        orders.setNumber(String.valueOf(System.currentTimeMillis()));//设置订单号
+        orders.setNumber(orderNumberGenerator.nextNumber());//设置订单号
         orders.setPhone(addressBook.getPhone());
         orders.setConsignee(addressBook.getConsignee());
         orders.setUserId(userId);
@@ -117,8 +158,13 @@ public class OrderServiceImpl implements OrderService {
             orderDetailList.add(orderDetail);
         }
         orderDetailMapper.insertBatch(orderDetailList);
-        //4.清空购物车
-        shoppingCartMapper.deleteById(userId);
+        //4.清空购物车，redis中的购物车不受数据库事务控制，事务提交后再清空，下单失败回滚时购物车保持不变
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                cartStore.clean(userId);
+            }
+        });
         //5.封装OrderSubmitVO对象,返回VO对象
         OrderSubmitVO orderSubmitVO = OrderSubmitVO.builder()
                 .id(orders.getId())
@@ -183,47 +229,56 @@ public class OrderServiceImpl implements OrderService {
      * @param orderNumber
      */
     public void paySuccess(String orderNumber) {
+        paySuccess(orderNumber, null);
+    }
 
-/*        // 根据订单号查询订单
-        Orders ordersDB = orderMapper.getByNumber(outTradeNo);
-
-        // 根据订单id更新订单的状态、支付方式、支付状态、结账时间
-        Orders orders = Orders.builder()
-                .id(ordersDB.getId())
-                .status(Orders.TO_BE_CONFIRMED)
-                .payStatus(Orders.PAID)
-                .checkoutTime(LocalDateTime.now())
-                .build();
-
-        orderMapper.update(orders);*/
-
-        //改造代码
-        Orders order = Orders.builder()
-                .number(orderNumber)
-                .build();
-        //根据订单id更新订单的状态、支付方式、支付状态、结账时间
-        List<Orders> ordersList = orderMapper.list(order);
-        if (ordersList != null && ordersList.size() == 1) {
-            order = ordersList.get(0);
-            order.setCheckoutTime(LocalDateTime.now());
-            order.setPayStatus(Orders.PAID);
-            order.setStatus(Orders.TO_BE_CONFIRMED);
-            orderMapper.update(order); //修改支付状态、时间、订单状态
+    /**
+     * 支付成功，修改订单状态
+     * 先按交易号记录回调，再按订单状态条件修改，两步在同一事务中完成，
+     * 重复回调或已处理过的订单不会再次修改订单、推送来单提醒
+     *
+     * @param orderNumber
+     * @param transactionId
+     */
+    public void paySuccess(String orderNumber, String transactionId) {
+        Long orderId = transactionTemplate.execute(status -> {
+            if (transactionId != null) {
+                PayNotifyLog payNotifyLog = PayNotifyLog.builder()
+                        .transactionId(transactionId)
+                        .outTradeNo(orderNumber)
+                        .createTime(LocalDateTime.now())
+                        .build();
+                //交易号已记录过，说明是微信的重复回调
+                if (payNotifyLogMapper.insertIgnore(payNotifyLog) == 0) {
+                    return null;
+                }
+            }
+            //只有待付款且未支付的订单才会被修改，修改成功时回填订单id
+            Orders orders = Orders.builder()
+                    .number(orderNumber)
+                    .status(Orders.TO_BE_CONFIRMED)
+                    .payStatus(Orders.PAID)
+                    .checkoutTime(LocalDateTime.now())
+                    .build();
+            return orderMapper.paySuccess(orders) == 1 ? orders.getId() : null;
+        });
+        if (orderId == null) {
+            log.info("支付回调已处理或订单状态不符，忽略：{}，{}", orderNumber, transactionId);
+            return;
         }
 
-        // 支付成功后返回首页需要清空购物车
-        shoppingCartMapper.delete(order.getUserId());
-
+        //已付款的订单不再需要超时取消
+        orderTimeoutQueue.remove(orderId);
 
         //通过websocket向客户端浏览器推送数据 type 、 orderId、content
         Map map = new HashMap();
         map.put("type",1); //1 代表新订单  2 代表用户催单
-        map.put("orderId",orderMapper.getByNumber(orderNumber).getId()); //获取订单id
+        map.put("orderId",orderId);
         map.put("content","订单号：" + orderNumber);
         //转JSON对象
         String json = JSON.toJSONString(map);
         //发送数据
-        webSocketServer.sendToAllClient(json);
+        webSocketServer.sendToShop(shopProperties.getId(), json);
     }
 
 
@@ -247,17 +302,16 @@ public class OrderServiceImpl implements OrderService {
         Page<Orders> page = orderMapper.pageQuery(ordersPageQueryDTO);
 
         List<OrderVO> list = new ArrayList<>();
-        //查询订单明细，
-        //判断查询结果是否为空
-        if (page != null && page.getTotal() > 0) {
+        //查询订单明细 -- 当前页所有订单的明细一次查出，再按订单id分组，避免每个订单查询一次
+        List<Orders> ordersList = page.getResult();
+        if (!CollectionUtils.isEmpty(ordersList)) {
+            Map<Long, List<OrderDetail>> orderDetailMap = getOrderDetailMap(ordersList);
             //遍历分页查询结果，获取每一个订单
-            for (Orders orders : page) {
-                Long orderId = orders.getId();//获取订单id
-                List<OrderDetail> orderDetailList = orderDetailMapper.getByOrderId(orderId);//获取订单明细
+            for (Orders orders : ordersList) {
                 //封装如OrderVO进行响应
                 OrderVO orderVO = new OrderVO();
                 BeanUtils.copyProperties(orders, orderVO);//拷贝信息
-                orderVO.setOrderDetailList(orderDetailList);
+                orderVO.setOrderDetailList(orderDetailMap.getOrDefault(orders.getId(), new ArrayList<>()));
                 //添加集合
                 list.add(orderVO);
             }
@@ -299,42 +353,10 @@ public class OrderServiceImpl implements OrderService {
     public void userCancelById(Long id) throws Exception {
         //业务规则：1.取消订单前，需要判断订单状态 -- 未支付、待接单（用户可以直接取消）
         //已接单、派送中（用户需要打电话跟商家沟通取消订单） 。 2. 取消订单后，商家需要给用户退款，并且把订单状态改为已取消
-
-        //查询订单状态
-        Orders ordersDB = orderMapper.getById(id);
-        //判断订单是否存在
-        if (ordersDB == null) {
-            throw new OrderBusinessException(MessageConstant.ORDER_NOT_FOUND);
-        }
-
-        //订单状态 1待付款 2待接单 3已接单 4派送中 5已完成 6已取消
-        if (ordersDB.getStatus() > 2) {
-            //只要订单不是 待付款和待接单就抛出异常,让用户自己去跟商家电话沟通协商
-            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
-        }
-
-
-        Orders orders = new Orders();
-        orders.setId(ordersDB.getId());
-        // 订单处于待接单状态下取消，需要进行退款
-        if (ordersDB.getStatus().equals(Orders.TO_BE_CONFIRMED)) {
-            //个人用户无法使用微信支付，所以直接改状态
-            //调用微信支付退款接口
-           /* weChatPayUtil.refund(
-                    ordersDB.getNumber(), //商户订单号
-                    ordersDB.getNumber(), //商户退款单号
-                    new BigDecimal(0.01),//退款金额，单位 元
-                    new BigDecimal(0.01));//原订单金额*/
-
-            //支付状态修改为 退款
-            orders.setPayStatus(Orders.REFUND);
-        }
-
-        // 更新订单状态、取消原因、取消时间
-        orders.setStatus(Orders.CANCELLED);
-        orders.setCancelReason("用户取消");
-        orders.setCancelTime(LocalDateTime.now());
-        orderMapper.update(orders);
+        //个人用户无法使用微信支付，所以已支付的订单直接把支付状态修改为退款
+        orderStateMachine.cancelByUser(id);
+        //已取消的订单不再需要超时取消
+        orderTimeoutQueue.remove(id);
     }
 
 
@@ -361,8 +383,8 @@ public class OrderServiceImpl implements OrderService {
                     return shoppingCart;
                 }).collect(Collectors.toList());
 
-        //讲购物车对象批量添加进数据库
-        shoppingCartMapper.insertBatch(shoppingCartList);
+        //讲购物车对象批量添加进购物车
+        cartStore.addBatch(shoppingCartList);
     }
 
 
@@ -376,7 +398,8 @@ public class OrderServiceImpl implements OrderService {
     public PageResult conditionSearch(OrdersPageQueryDTO ordersPageQueryDTO) {
         //构建分页条件
         PageHelper.startPage(ordersPageQueryDTO.getPage(), ordersPageQueryDTO.getPageSize());
-        Page<Orders> page = orderMapper.pageQuery(ordersPageQueryDTO);
+        //收货地址在分页查询中关联地址簿一并查出
+        Page<Orders> page = orderMapper.pageQueryWithAddress(ordersPageQueryDTO);
 
         //部分订单状态，需要额外返回订单菜品信息， 将Orders转化为OrdersVO
         List<OrderVO> orderVOList = getOrderVOList(page);
@@ -396,15 +419,13 @@ public class OrderServiceImpl implements OrderService {
         //获取订单集合
         List<Orders> ordersList = page.getResult();
         if (!CollectionUtils.isEmpty(ordersList)) {
+            //当前页的订单明细批量查询一次，在内存中按订单id分组
+            Map<Long, List<OrderDetail>> orderDetailMap = getOrderDetailMap(ordersList);
             for (Orders orders : ordersList) {
-                //获取地址
-                AddressBook addressBook = addressBookMapper.getById(orders.getAddressBookId());
-                orders.setAddress(addressBook.getProvinceName() + addressBook.getCityName()
-                        + addressBook.getDistrictName() + " " + "(" + addressBook.getDetail() + ")");
                 //把共同字段拷贝到OrderVO
                 OrderVO orderVO = new OrderVO();
                 BeanUtils.copyProperties(orders, orderVO);
-                String orderDishes = getOrderDishesStr(orders);
+                String orderDishes = getOrderDishesStr(orderDetailMap.getOrDefault(orders.getId(), new ArrayList<>()));
                 //设置菜品详情
                 orderVO.setOrderDishes(orderDishes);
                 //放入集合中
@@ -415,14 +436,24 @@ public class OrderServiceImpl implements OrderService {
     }
 
     /**
-     * 根据订单id获取菜品信息字符串
+     * 批量查询订单明细，按订单id分组
      *
-     * @param orders
+     * @param ordersList
      * @return
      */
-    private String getOrderDishesStr(Orders orders) {
-        // 查询订单菜品详情信息（订单中的菜品和数量）
-        List<OrderDetail> orderDetailList = orderDetailMapper.getByOrderId(orders.getId());
+    private Map<Long, List<OrderDetail>> getOrderDetailMap(List<Orders> ordersList) {
+        List<Long> orderIds = ordersList.stream().map(Orders::getId).collect(Collectors.toList());
+        return orderDetailMapper.getByOrderIds(orderIds).stream()
+                .collect(Collectors.groupingBy(OrderDetail::getOrderId));
+    }
+
+    /**
+     * 将订单明细拼接为菜品信息字符串
+     *
+     * @param orderDetailList
+     * @return
+     */
+    private String getOrderDishesStr(List<OrderDetail> orderDetailList) {
         //将每一条订单菜品信息拼接为字符串（格式：宫保鸡丁*3；）
         List<String> orderDishList = orderDetailList.stream()
                 .map(orderDetail -> {
@@ -463,12 +494,8 @@ public class OrderServiceImpl implements OrderService {
      */
     @Override
     public void confirm(OrdersConfirmDTO ordersConfirmDTO) {
-        //业务规则：接单就是把订单状态修改一下
-        Orders orders = Orders.builder()
-                .status(Orders.CONFIRMED)
-                .id(ordersConfirmDTO.getId())
-                .build();
-        orderMapper.update(orders);
+        //业务规则：接单就是把订单状态修改一下，只有待接单的订单可以接单
+        orderStateMachine.confirm(ordersConfirmDTO.getId());
     }
 
     /**
@@ -484,36 +511,8 @@ public class OrderServiceImpl implements OrderService {
         //- 商家拒单时需要指定拒单原因
         //- 商家拒单时，如果用户已经完成了支付，需要为用户退款
 
-        //判断订单是否处于待接单状态
-        Orders ordersDB = orderMapper.getById(ordersRejectionDTO.getId());
-        if (ordersDB == null || !ordersDB.getStatus().equals(Orders.TO_BE_CONFIRMED)) {
-            //订单为空或者状态不为“待接单”则抛出业务异常
-            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
-        }
-
-        //支付状态
-        Integer payStatus = ordersDB.getPayStatus();
-        if (payStatus == Orders.PAID) {
-            //用户已支付，需要退款  ，
-           /* String refund = weChatPayUtil.refund(
-                    ordersDB.getNumber(),
-                    ordersDB.getNumber(),
-                    new BigDecimal(0.01),
-                    new BigDecimal(0.01));
-            log.info("申请退款：{}", refund);*/
-
-        }
         //个人商户微信小程序无法使用支付功能，所以直接逻辑修改为退款
-        // 拒单需要退款，根据订单id更新订单状态、拒单原因、取消时间
-        Orders orders = new Orders();
-        orders.setId(ordersDB.getId());
-        orders.setPayStatus(Orders.REFUND);
-        orders.setRejectionReason(ordersRejectionDTO.getRejectionReason());
-        orders.setStatus(Orders.CANCELLED);
-        orders.setCancelTime(LocalDateTime.now());
-        orderMapper.update(orders);
-
-
+        orderStateMachine.reject(ordersRejectionDTO.getId(), ordersRejectionDTO.getRejectionReason());
     }
 
     /**
@@ -528,20 +527,9 @@ public class OrderServiceImpl implements OrderService {
         //- 商家取消订单时需要指定取消原因
         //- 商家取消订单时，如果用户已经完成了支付，需要为用户退款
 
-        //获取订单
-        Orders ordersDB = orderMapper.getById(ordersCancelDTO.getId());
-        //判断用户是否已经支付
-        if (ordersDB.getPayStatus().equals(Orders.PAID)) {
-
-            //个人商户微信小程序无法使用支付功能，所以直接逻辑修改为退款
-        }
-        // 管理端取消订单需要退款，根据订单id更新订单状态、取消原因、取消时间
-        Orders orders = new Orders();
-        orders.setId(ordersCancelDTO.getId());
-        orders.setStatus(Orders.CANCELLED);
-        orders.setCancelReason(ordersCancelDTO.getCancelReason());
-        orders.setCancelTime(LocalDateTime.now());
-        orderMapper.update(orders);
+        //个人商户微信小程序无法使用支付功能，所以直接逻辑修改为退款
+        orderStateMachine.cancelByAdmin(ordersCancelDTO.getId(), ordersCancelDTO.getCancelReason());
+        orderTimeoutQueue.remove(ordersCancelDTO.getId());
     }
 
     /**
@@ -553,85 +541,7 @@ public class OrderServiceImpl implements OrderService {
         //业务规则：
         //- 派送订单其实就是将订单状态修改为“派送中”
         //- 只有状态为“待派送”的订单可以执行派送订单操作
-
-        //查询订单
-        Orders ordersDB = orderMapper.getById(id);
-        // 校验订单是否存在，并且状态为3
-        if ( ordersDB == null  || !ordersDB.getStatus().equals(Orders.CONFIRMED)){
-            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
-        }
-        Orders orders = new Orders();
-        orders.setId(ordersDB.getId());
-        // 更新订单状态,状态转为派送中
-        orders.setStatus(Orders.DELIVERY_IN_PROGRESS);
-
-        orderMapper.update(orders);
-    }
-
-
-
-    /**
-     * 检查客户的收货地址是否超出配送范围
-     * @param address
-     */
-    private void checkOutOfRange(String address) {
-        Map map = new HashMap();
-        map.put("address",shopAddress);
-        map.put("output","json");
-        map.put("ak",ak);
-
-        //获取店铺的经纬度坐标
-        String shopCoordinate = HttpClientUtil.doGet("https://api.map.baidu.com/geocoding/v3", map);
-
-        JSONObject jsonObject = JSON.parseObject(shopCoordinate);
-        if(!jsonObject.getString("status").equals("0")){
-            throw new OrderBusinessException("店铺地址解析失败");
-        }
-
-        //数据解析
-        JSONObject location = jsonObject.getJSONObject("result").getJSONObject("location");
-        String lat = location.getString("lat");
-        String lng = location.getString("lng");
-        //店铺经纬度坐标
-        String shopLngLat = lat + "," + lng;
-
-        map.put("address",address);
-        //获取用户收货地址的经纬度坐标
-        String userCoordinate = HttpClientUtil.doGet("https://api.map.baidu.com/geocoding/v3", map);
-
-        jsonObject = JSON.parseObject(userCoordinate);
-        if(!jsonObject.getString("status").equals("0")){
-            throw new OrderBusinessException("收货地址解析失败");
-        }
-
-        //数据解析
-        location = jsonObject.getJSONObject("result").getJSONObject("location");
-        lat = location.getString("lat");
-        lng = location.getString("lng");
-        //用户收货地址经纬度坐标
-        String userLngLat = lat + "," + lng;
-
-        map.put("origin",shopLngLat);
-        map.put("destination",userLngLat);
-        map.put("steps_info","0");
-
-        //路线规划
-        String json = HttpClientUtil.doGet("https://api.map.baidu.com/directionlite/v1/driving", map);
-
-        jsonObject = JSON.parseObject(json);
-        if(!jsonObject.getString("status").equals("0")){
-            throw new OrderBusinessException("配送路线规划失败");
-        }
-
-        //数据解析
-        JSONObject result = jsonObject.getJSONObject("result");
-        JSONArray jsonArray = (JSONArray) result.get("routes");
-        Integer distance = (Integer) ((JSONObject) jsonArray.get(0)).get("distance");
-
-        if(distance > 5000){
-            //配送距离超过5000米
-            throw new OrderBusinessException("超出配送范围");
-        }
+        orderStateMachine.deliver(id);
     }
 
 
@@ -642,21 +552,9 @@ public class OrderServiceImpl implements OrderService {
      * @param id
      */
     public void complete(Long id) {
-        // 根据id查询订单
-        Orders ordersDB = orderMapper.getById(id);
-
-        // 校验订单是否存在，并且状态为4
-        if (ordersDB == null || !ordersDB.getStatus().equals(Orders.DELIVERY_IN_PROGRESS)) {
-            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
-        }
-
-        Orders orders = new Orders();
-        orders.setId(ordersDB.getId());
-        // 更新订单状态,状态转为完成
-        orders.setStatus(Orders.COMPLETED);
-        orders.setDeliveryTime(LocalDateTime.now());
-
-        orderMapper.update(orders);
+        // 只有派送中的订单可以完成，修改状态和累加下单当天的有效订单数、营业额在同一个事务中
+        transactionTemplate.executeWithoutResult(status ->
+                businessStatsService.orderCompleted(orderStateMachine.complete(id)));
     }
 
 
@@ -682,7 +580,7 @@ public class OrderServiceImpl implements OrderService {
         //转为JSON字符串
         String json = JSON.toJSONString(map);
         //通过websocket向客户端浏览器推送数据
-        webSocketServer.sendToAllClient(json);
+        webSocketServer.sendToShop(shopProperties.getId(), json);
 
     }
 
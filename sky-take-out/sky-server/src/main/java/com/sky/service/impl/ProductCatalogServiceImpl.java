@@ -0,0 +1,98 @@
+package com.sky.service.impl;
+
+import com.sky.dto.ProductDTO;
+import com.sky.entity.Dish;
+import com.sky.entity.Setmeal;
+import com.sky.mapper.DishMapper;
+import com.sky.mapper.SetmealMapper;
+import com.sky.service.ProductCatalogService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * 商品基本信息查询，结果缓存在productCache中，key: productCache::dish_1、productCache::setmeal_1
+ */
+@Service
+public class ProductCatalogServiceImpl implements ProductCatalogService {
+
+    private static final String CACHE_NAME = "productCache";
+
+    @Autowired
+    private DishMapper dishMapper;
+    @Autowired
+    private SetmealMapper setmealMapper;
+    @Autowired
+    private CacheManager cacheManager;
+
+    /**
+     * 根据id查询菜品基本信息
+     * @param id
+     * @return
+     */
+    @Override
+    @Cacheable(cacheNames = CACHE_NAME, key = "'dish_' + #id", sync = true)
+    public ProductDTO getDish(Long id) {
+        Dish dish = dishMapper.getById(id);
+        if (dish == null) {
+            return null;
+        }
+        return ProductDTO.builder()
+                .id(dish.getId())
+                .name(dish.getName())
+                .image(dish.getImage())
+                .price(dish.getPrice())
+                .status(dish.getStatus())
+                .build();
+    }
+
+    /**
+     * 根据id查询套餐基本信息
+     * @param id
+     * @return
+     */
+    @Override
+    @Cacheable(cacheNames = CACHE_NAME, key = "'setmeal_' + #id", sync = true)
+    public ProductDTO getSetmeal(Long id) {
+        Setmeal setmeal = setmealMapper.getById(id);
+        if (setmeal == null) {
+            return null;
+        }
+        return ProductDTO.builder()
+                .id(setmeal.getId())
+                .name(setmeal.getName())
+                .image(setmeal.getImage())
+                .price(setmeal.getPrice())
+                .status(setmeal.getStatus())
+                .build();
+    }
+
+    /**
+     * 菜品修改、删除、起售停售后清理缓存
+     * @param ids
+     */
+    @Override
+    public void evictDishes(List<Long> ids) {
+        evict("dish_", ids);
+    }
+
+    /**
+     * 套餐修改、删除、起售停售后清理缓存
+     * @param ids
+     */
+    @Override
+    public void evictSetmeals(List<Long> ids) {
+        evict("setmeal_", ids);
+    }
+
+    private void evict(String prefix, List<Long> ids) {
+        Cache cache = cacheManager.getCache(CACHE_NAME);
+        for (Long id : ids) {
+            cache.evict(prefix + id);
+        }
+    }
+}
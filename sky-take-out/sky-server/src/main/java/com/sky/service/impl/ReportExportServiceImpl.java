@@ -0,0 +1,364 @@
+package com.sky.service.impl;
+
+import com.sky.constant.MessageConstant;
+import com.sky.exception.ReportBusinessException;
+import com.sky.mapper.DailyBusinessStatsMapper;
+import com.sky.service.ReportExportService;
+import com.sky.service.ReportService;
+import com.sky.vo.ReportExportJobVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 运营数据报表异步导出
+ * 导出任务只保存在当前实例的内存中，报表文件写在本机目录，只支持单实例部署：
+ * 多实例时查询请求落到其他实例或重启后会返回任务不存在
+ */
+@Service
+@Slf4j
+public class ReportExportServiceImpl implements ReportExportService {
+
+    //已结束的任务保留的时间（小时），过期后删除任务和非缓存文件
+    private static final long JOB_EXPIRE_HOURS = 1;
+
+    @Value("${sky.report.export-dir:${java.io.tmpdir}/sky-report}")
+    private String exportDir;
+    //报表缓存文件保留的天数和缓存目录的最大总大小（MB），超出时先删除最早生成的文件
+    @Value("${sky.report.cache-expire-days:30}")
+    private long cacheExpireDays;
+    @Value("${sky.report.cache-max-size:512}")
+    private long cacheMaxSize;
+
+    @Autowired
+    private ReportService reportService;
+    @Autowired
+    private DailyBusinessStatsMapper dailyBusinessStatsMapper;
+    @Autowired
+    private ThreadPoolTaskExecutor reportExportExecutor;
+
+    //导出任务，key为任务id
+    private final Map<String, ExportJob> jobMap = new ConcurrentHashMap<>();
+
+    //已关账区间的报表缓存目录，文件名由日期区间决定
+    private Path cacheDir;
+    //未关账区间的报表目录，文件名由任务id决定
+    private Path jobDir;
+
+    @PostConstruct
+    public void init() throws IOException {
+        cacheDir = Files.createDirectories(Paths.get(exportDir, "cache"));
+        jobDir = Files.createDirectories(Paths.get(exportDir, "job"));
+        log.info("报表导出目录:{}", exportDir);
+    }
+
+    /**
+     * 提交运营数据报表导出任务
+     *
+     * @param begin
+     * @param end
+     * @return
+     */
+    public ReportExportJobVO submit(LocalDate begin, LocalDate end) {
+        if (begin.isAfter(end)) {
+            throw new ReportBusinessException(MessageConstant.REPORT_DATE_RANGE_ERROR);
+        }
+
+        ExportJob job = new ExportJob(UUID.randomUUID().toString().replace("-", ""), begin, end);
+        jobMap.put(job.jobId, job);
+
+        //区间已关账并且缓存文件比汇总数据新，直接使用缓存文件，不再重新生成
+        boolean closed = isClosed(end);
+        if (closed) {
+            Path cacheFile = getCacheFile(begin, end);
+            if (isCacheValid(cacheFile, begin, end)) {
+                log.info("报表导出命中缓存:{}", cacheFile);
+                job.finish(cacheFile, true);
+                return job.toVO();
+            }
+        }
+
+        try {
+            reportExportExecutor.execute(() -> generate(job, closed));
+        } catch (TaskRejectedException e) {
+            jobMap.remove(job.jobId);
+            throw new ReportBusinessException(MessageConstant.REPORT_EXPORT_BUSY);
+        }
+        return job.toVO();
+    }
+
+    /**
+     * 查询导出任务状态
+     *
+     * @param jobId
+     * @return
+     */
+    public ReportExportJobVO getJob(String jobId) {
+        return getExportJob(jobId).toVO();
+    }
+
+    /**
+     * 获取已完成的导出任务生成的文件
+     *
+     * @param jobId
+     * @return
+     */
+    public Path getFile(String jobId) {
+        ExportJob job = getExportJob(jobId);
+        Path file = job.file;
+        if (file == null || !Files.exists(file)) {
+            throw new ReportBusinessException(MessageConstant.REPORT_EXPORT_NOT_READY);
+        }
+        return file;
+    }
+
+    /**
+     * 生成报表文件，先写入临时文件，完成后再移动到目标位置
+     *
+     * @param job
+     * @param closed 区间是否已关账，已关账的报表写入缓存目录
+     */
+    private void generate(ExportJob job, boolean closed) {
+        job.start();
+        Path target = closed ? getCacheFile(job.begin, job.end) : jobDir.resolve(job.jobId + ".xlsx");
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(jobDir, job.jobId, ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                reportService.exportBusinesData(job.begin, job.end, out);
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            job.finish(target, closed);
+            log.info("报表导出完成:{}", target);
+        } catch (Exception e) {
+            log.error("报表导出失败:{}", job.jobId, e);
+            job.fail(e.getMessage());
+            deleteQuietly(tmp);
+        }
+    }
+
+    /**
+     * 区间结束日期早于昨天才算关账，当天和昨天的订单可能还在派送、完成，汇总数据仍会变化
+     *
+     * @param end
+     * @return
+     */
+    private boolean isClosed(LocalDate end) {
+        return end.isBefore(LocalDate.now().minusDays(1));
+    }
+
+    /**
+     * 缓存文件存在，并且生成时间晚于区间内汇总数据的最后更新时间（例如夜间对账）才有效
+     *
+     * @param cacheFile
+     * @param begin
+     * @param end
+     * @return
+     */
+    private boolean isCacheValid(Path cacheFile, LocalDate begin, LocalDate end) {
+        if (!Files.exists(cacheFile)) {
+            return false;
+        }
+        LocalDateTime lastUpdateTime = dailyBusinessStatsMapper.getLastUpdateTime(begin, end);
+        if (lastUpdateTime == null) {
+            return true;
+        }
+        try {
+            long lastModified = Files.getLastModifiedTime(cacheFile).toMillis();
+            return lastModified > lastUpdateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private Path getCacheFile(LocalDate begin, LocalDate end) {
+        return cacheDir.resolve("business_" + begin + "_" + end + ".xlsx");
+    }
+
+    private ExportJob getExportJob(String jobId) {
+        ExportJob job = jobMap.get(jobId);
+        if (job == null) {
+            throw new ReportBusinessException(MessageConstant.REPORT_EXPORT_JOB_NOT_FOUND);
+        }
+        return job;
+    }
+
+    /**
+     * 清理过期的导出任务和文件，并按保留天数和总大小清理报表缓存
+     */
+    public void cleanExpired() {
+        cleanExpiredJobs();
+        cleanJobDir();
+        cleanCacheDir();
+    }
+
+    /**
+     * 清理过期的任务，缓存目录中的文件保留给后续相同区间的导出复用
+     */
+    private void cleanExpiredJobs() {
+        LocalDateTime expireTime = LocalDateTime.now().minusHours(JOB_EXPIRE_HOURS);
+        jobMap.values().removeIf(job -> {
+            if (!job.isExpired(expireTime)) {
+                return false;
+            }
+            if (!job.cached) {
+                deleteQuietly(job.file);
+            }
+            return true;
+        });
+    }
+
+    /**
+     * 删除任务目录中超过任务保留时间的文件，包括重启前遗留的文件和导出失败残留的临时文件
+     */
+    private void cleanJobDir() {
+        long expireMillis = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(JOB_EXPIRE_HOURS);
+        for (FileInfo fileInfo : listFiles(jobDir)) {
+            if (fileInfo.lastModified < expireMillis) {
+                deleteQuietly(fileInfo.path);
+            }
+        }
+    }
+
+    /**
+     * 删除超过保留天数的缓存文件，剩余文件总大小超过上限时从最早生成的开始删除
+     */
+    private void cleanCacheDir() {
+        long expireMillis = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(cacheExpireDays);
+        long maxSize = cacheMaxSize * 1024 * 1024;
+        List<FileInfo> files = listFiles(cacheDir);
+        //最新生成的在前
+        files.sort(Comparator.comparingLong((FileInfo fileInfo) -> fileInfo.lastModified).reversed());
+        long totalSize = 0;
+        for (FileInfo fileInfo : files) {
+            totalSize += fileInfo.size;
+            if (fileInfo.lastModified < expireMillis || totalSize > maxSize) {
+                deleteQuietly(fileInfo.path);
+                log.info("删除报表缓存文件:{}", fileInfo.path);
+            }
+        }
+    }
+
+    private List<FileInfo> listFiles(Path dir) {
+        List<FileInfo> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path path : stream) {
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                    if (attributes.isRegularFile()) {
+                        files.add(new FileInfo(path, attributes.lastModifiedTime().toMillis(), attributes.size()));
+                    }
+                } catch (IOException e) {
+                    //文件已被删除
+                    log.debug("读取报表文件属性失败:{}", path);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("读取报表目录失败:{}", dir, e);
+        }
+        return files;
+    }
+
+    private void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("删除报表文件失败:{}", file, e);
+        }
+    }
+
+    /**
+     * 清理时使用的文件信息
+     */
+    private static class FileInfo {
+        private final Path path;
+        private final long lastModified;
+        private final long size;
+
+        FileInfo(Path path, long lastModified, long size) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.size = size;
+        }
+    }
+
+    /**
+     * 导出任务，状态由导出线程修改，查询线程读取
+     */
+    private static class ExportJob {
+        private final String jobId;
+        private final LocalDate begin;
+        private final LocalDate end;
+        private final LocalDateTime createTime = LocalDateTime.now();
+        private volatile Integer status = ReportExportJobVO.WAITING;
+        private volatile Path file;
+        private volatile boolean cached;
+        private volatile String message;
+        private volatile LocalDateTime finishTime;
+
+        ExportJob(String jobId, LocalDate begin, LocalDate end) {
+            this.jobId = jobId;
+            this.begin = begin;
+            this.end = end;
+        }
+
+        void start() {
+            status = ReportExportJobVO.RUNNING;
+        }
+
+        void finish(Path file, boolean cached) {
+            this.file = file;
+            this.cached = cached;
+            this.finishTime = LocalDateTime.now();
+            this.status = ReportExportJobVO.SUCCESS;
+        }
+
+        void fail(String message) {
+            this.message = message;
+            this.finishTime = LocalDateTime.now();
+            this.status = ReportExportJobVO.FAILED;
+        }
+
+        boolean isExpired(LocalDateTime expireTime) {
+            return finishTime != null && finishTime.isBefore(expireTime);
+        }
+
+        ReportExportJobVO toVO() {
+            return ReportExportJobVO.builder()
+                    .jobId(jobId)
+                    .status(status)
+                    .begin(begin)
+                    .end(end)
+                    .message(message)
+                    .createTime(createTime)
+                    .finishTime(finishTime)
+                    .build();
+        }
+    }
+}
@@ -1,14 +1,19 @@
 package com.sky.service.impl;
 
 import com.sky.dto.GoodsSalesDTO;
-import com.sky.entity.Orders;
+import com.sky.entity.DailyBusinessStats;
 import com.sky.mapper.OrderMapper;
 import com.sky.mapper.UserMapper;
+import com.sky.service.BusinessStatsService;
 import com.sky.service.ReportService;
 import com.sky.service.WorkspaceService;
 import com.sky.vo.*;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.StringUtils;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFRow;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
@@ -19,6 +24,7 @@ import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
@@ -32,12 +38,21 @@ import java.util.stream.Collectors;
 @Slf4j
 public class ReportServiceImpl implements ReportService {
 
+    //模板中明细数据的起始行和单元格范围
+    private static final int DETAIL_FIRST_ROW = 7;
+    private static final int DETAIL_FIRST_CELL = 1;
+    private static final int DETAIL_LAST_CELL = 6;
+    //流式写入时内存中保留的行数
+    private static final int ROW_ACCESS_WINDOW_SIZE = 100;
+
     @Autowired
     private OrderMapper orderMapper;
     @Autowired
     private UserMapper userMapper;
     @Autowired
     private WorkspaceService workspaceService;
+    @Autowired
+    private BusinessStatsService businessStatsService;
 
     /**
      * 统计指定区间内的营业额数据
@@ -49,42 +64,20 @@ public class ReportServiceImpl implements ReportService {
     @Override
     public TurnoverReportVO getTurnoverStatistics(LocalDate begin, LocalDate end) {
         //先拿到指定区间内的每一天的时间
-        //使用集合来封装每一天
-        List<LocalDate> dateList = new ArrayList<>();
+        List<LocalDate> dateList = getDateList(begin, end);
 
-        dateList.add(begin);
-        while (!begin.equals(end)) {
-            //当开始时间等于结束时间的时候就停止循环
-            begin = begin.plusDays(1); //开始日期加1天
-            dateList.add(begin); //把每一天添加进集合中
-        }
+        //从每日汇总数据中读取每天的营业额，营业额是指每天已完成订单的金额总数
+        List<DailyBusinessStats> statsList = businessStatsService.list(begin, end);
 
         //创建集合存放每天的营业额
-        List<Double> turnoverList = new ArrayList<>();
-        //根据每一天的日期获取每天的营业额，营业额是指每天已完成订单的金额总数
-        for (LocalDate date : dateList) {
-            //因为数据库中的下单日期类型是：LocalDateTime，而前端传过来的是LocalDate，我们需要精确到秒，拿到最大最小时间
-            LocalDateTime beginTime = LocalDateTime.of(date, LocalTime.MIN);
-            LocalDateTime endTime = LocalDateTime.of(date, LocalTime.MAX);
-            //创建Map集合来存放数据
-            Map map = new HashMap();
-            map.put("begin", beginTime); //开始时间
-            map.put("end", endTime); //结束时间
-            map.put("status", Orders.COMPLETED); //订单状态为 “已完成”
-            //数据库查询语句：select sum(amount) from orders where order_time > ? and order_time < ?  and status = 5;
-            Double turnover = orderMapper.sumByMap(map);
-
-            //进行判断，如果当天营业额为0，则赋值0.0，不然会在集合中表示为null。 用三目运算符解决
-            turnover = turnover == null ? 0.0 : turnover;
-            //最后把查询到的营业额放入集合中
-            turnoverList.add(turnover);
-        }
-
+        List<Double> turnoverList = statsList.stream()
+                .map(stats -> stats.getTurnover().doubleValue())
+                .collect(Collectors.toList());
 
         //构建并返回VO对象
         return TurnoverReportVO.builder()
                 .dateList(StringUtils.join(dateList, ",")) //每一天
-                .turnoverList(org.apache.commons.lang3.StringUtils.join(turnoverList)) //每一天营业额
+                .turnoverList(StringUtils.join(turnoverList, ",")) //每一天营业额
                 .build();
     }
 
@@ -98,39 +91,27 @@ public class ReportServiceImpl implements ReportService {
     @Override
     public UserReportVO getUserStatistics(LocalDate begin, LocalDate end) {
         //先拿到指定区间内的每一天的时间
-        //使用集合来封装每一天
-        List<LocalDate> dateList = new ArrayList<>();
+        List<LocalDate> dateList = getDateList(begin, end);
 
-        dateList.add(begin);
-        while (!begin.equals(end)) {
-            //当开始时间等于结束时间的时候就停止循环
-            begin = begin.plusDays(1); //开始日期加1天
-            dateList.add(begin); //把每一天添加进集合中
-        }
+        //区间开始前的用户总数，作为累计用户数的起点  select count(id) from user where create_time < ?
+        Map map = new HashMap();
+        map.put("end", LocalDateTime.of(begin, LocalTime.MIN));
+        Integer totalUser = userMapper.countByMap(map);
+        totalUser = totalUser == null ? 0 : totalUser;
+
+        //从每日汇总数据中读取每天的新增用户数量
+        List<DailyBusinessStats> statsList = businessStatsService.list(begin, end);
 
-        //存放统计每天的新增用户数量  select count(id) from user where create_time < ? and create_time > ?
+        //存放统计每天的新增用户数量
         List<Integer> newUserList = new ArrayList<>();
-        //存放统计指定区间的总用户数量  select count(id) from user where create_time < ?
+        //存放统计指定区间的总用户数量，在内存中按天累加
         List<Integer> totalUserList = new ArrayList<>();
 
-        for (LocalDate date : dateList) {
-            //获取每一天的最大最小时间
-            LocalDateTime beginTime = LocalDateTime.of(date, LocalTime.MIN);
-            LocalDateTime endTime = LocalDateTime.of(date, LocalTime.MAX);
-
-            Map map = new HashMap();
-            //先统计总用户，利用动态SQL，一条查询语句可以复用，
-            map.put("end", endTime);
-            Integer totalUser = userMapper.countByMap(map);
-            totalUser = totalUser == null ? 0 : totalUser; //非空判断，如果为空则吧null变为0，用于前端展示数据
-            //再统计新增用户
-            map.put("begin", beginTime);
-            Integer newUser = userMapper.countByMap(map);
-            newUser = newUser == null ? 0 : newUser; //非空判断，如果为空则吧null变为0，用于前端展示数据
-            //放入集合中
-            totalUserList.add(totalUser);
+        for (DailyBusinessStats stats : statsList) {
+            Integer newUser = stats.getNewUsers();
+            totalUser += newUser;
             newUserList.add(newUser);
-
+            totalUserList.add(totalUser);
         }
         //创建UserReportVO并返回
         return UserReportVO.builder()
@@ -151,38 +132,25 @@ public class ReportServiceImpl implements ReportService {
     @Override
     public OrderReportVO getOrdersStatistics(LocalDate begin, LocalDate end) {
         //先拿到指定区间内的每一天的时间
-        //使用集合来封装每一天
-        List<LocalDate> dateList = new ArrayList<>();
+        List<LocalDate> dateList = getDateList(begin, end);
 
-        dateList.add(begin);
-        while (!begin.equals(end)) {
-            //当开始时间等于结束时间的时候就停止循环
-            begin = begin.plusDays(1); //开始日期加1天
-            dateList.add(begin); //把每一天添加进集合中
-        }
+        //从每日汇总数据中读取每天的订单总数和有效订单数
+        List<DailyBusinessStats> statsList = businessStatsService.list(begin, end);
 
         //创建集合封装数据
         List<Integer> orderCountList = new ArrayList<>();
         List<Integer> validOrderCountList = new ArrayList<>();
 
-        //遍历dateList集合，查询每天的订单总数和有效订单数
-        for (LocalDate date : dateList) {
-            LocalDateTime beginTime = LocalDateTime.of(date, LocalTime.MIN);
-            LocalDateTime endTime = LocalDateTime.of(date, LocalTime.MAX);
-            //查询每天的订单总数 select count(id) from orders where order_time > ? and order_time < ?
-            Integer orderCount = getOrderCount(beginTime, endTime, null);
-            //查询每天的有效订单数select count(id) from orders where order_time > ? and order_time < ? and status =5
-            Integer validOrderCount = getOrderCount(beginTime, endTime, Orders.COMPLETED);
-
-            orderCountList.add(orderCount);
-            validOrderCountList.add(validOrderCount);
+        for (DailyBusinessStats stats : statsList) {
+            orderCountList.add(stats.getOrderCount());
+            validOrderCountList.add(stats.getCompletedCount());
         }
 
         //统计订单总数 --使用stream流， reduce可以合并
-        Integer totalOrderCount = orderCountList.stream().reduce(Integer::sum).get();
+        Integer totalOrderCount = orderCountList.stream().reduce(0, Integer::sum);
 
         //统计有效订单总数
-        Integer totalValidOrderCount = validOrderCountList.stream().reduce(Integer::sum).get();
+        Integer totalValidOrderCount = validOrderCountList.stream().reduce(0, Integer::sum);
 
         Double orderCompletionRate = 0.0;
         if (totalOrderCount != 0) {
@@ -202,20 +170,21 @@ public class ReportServiceImpl implements ReportService {
 
 
     /**
-     * 根据条件统计订单数据
+     * 获取指定区间内的每一天
      *
      * @param begin
      * @param end
-     * @param status
      * @return
      */
-    private Integer getOrderCount(LocalDateTime begin, LocalDateTime end, Integer status) {
-        Map map = new HashMap();
-        map.put("begin", begin);
-        map.put("end", end);
-        map.put("status", status);
-
-        return orderMapper.countByMap(map);
+    private List<LocalDate> getDateList(LocalDate begin, LocalDate end) {
+        List<LocalDate> dateList = new ArrayList<>();
+        dateList.add(begin);
+        while (begin.isBefore(end)) {
+            //当开始时间等于结束时间的时候就停止循环
+            begin = begin.plusDays(1);
+            dateList.add(begin);
+        }
+        return dateList;
     }
 
     /**
@@ -249,71 +218,103 @@ public class ReportServiceImpl implements ReportService {
 
 
     /**
-     * 导出运营数据报表
+     * 导出最近30天的运营数据报表
      *
      * @param response
      */
     @Override
     public void exportBusinesData(HttpServletResponse response) {
-        //1.查询数据库，获取数据 -- 查询最近30天的运营数据
+        //查询最近30天的运营数据
         LocalDate dateBegin = LocalDate.now().minusDays(30); //当前时间减去30天
         LocalDate dateEnd = LocalDate.now().minusDays(1);
-        //获取30天内的概览数据
-        BusinessDataVO businessDataVO = workspaceService.getBusinessData(LocalDateTime.of(dateBegin, LocalTime.MIN), LocalDateTime.of(dateEnd, LocalTime.MAX));
+        try {
+            ServletOutputStream sos = response.getOutputStream();
+            exportBusinesData(dateBegin, dateEnd, sos);
+            sos.close();
+        } catch (IOException e) {
+            log.error("导出运营数据报表失败", e);
+        }
+    }
+
+    /**
+     * 导出指定区间内的运营数据报表
+     *
+     * @param begin
+     * @param end
+     * @param out
+     */
+    @Override
+    public void exportBusinesData(LocalDate begin, LocalDate end, OutputStream out) throws IOException {
+        //1.查询数据库，获取数据 -- 区间概览数据和每一天的明细数据都读取每日汇总，各一次查询
+        BusinessDataVO businessDataVO = workspaceService.getBusinessData(LocalDateTime.of(begin, LocalTime.MIN), LocalDateTime.of(end, LocalTime.MAX));
+        List<BusinessDataVO> dailyBusinessData = workspaceService.getDailyBusinessData(begin, end);
 
         //2.通过POI写入到Excel文件中
         //通过反射获取输入流
         InputStream in = this.getClass().getClassLoader().getResourceAsStream("template/运营数据报表模板.xlsx");
-        try {
-            //基于模板创建一个Excel文件
-            XSSFWorkbook excel = new XSSFWorkbook(in);
-            //获取表格文件sheet页
-            XSSFSheet sheet = excel.getSheet("Sheet1");
-
-            //填充数据-- 时间
-            sheet.getRow(1).getCell(1).setCellValue("时间:" + dateBegin + "至" + dateEnd);
-
-            //获得第4行
-            XSSFRow row = sheet.getRow(3);
-            row.getCell(2).setCellValue(businessDataVO.getTurnover());
-            row.getCell(4).setCellValue(businessDataVO.getOrderCompletionRate());
-            row.getCell(6).setCellValue(businessDataVO.getNewUsers());
+        //基于模板创建一个Excel文件
+        XSSFWorkbook template = new XSSFWorkbook(in);
+        //获取表格文件sheet页
+        XSSFSheet sheet = template.getSheet("Sheet1");
+
+        //填充数据-- 时间
+        sheet.getRow(1).getCell(1).setCellValue("时间:" + begin + "至" + end);
+
+        //获得第4行
+        XSSFRow row = sheet.getRow(3);
+        row.getCell(2).setCellValue(businessDataVO.getTurnover());
+        row.getCell(4).setCellValue(businessDataVO.getOrderCompletionRate());
+        row.getCell(6).setCellValue(businessDataVO.getNewUsers());
+
+        //获得第5行
+        row = sheet.getRow(4);
+        row.getCell(2).setCellValue(businessDataVO.getValidOrderCount());
+        row.getCell(4).setCellValue(businessDataVO.getUnitPrice());
+
+        //记录模板中明细行的样式和行高，然后删除模板中的明细行，明细数据改为流式写入
+        row = sheet.getRow(DETAIL_FIRST_ROW);
+        short rowHeight = row.getHeight();
+        CellStyle[] cellStyles = new CellStyle[DETAIL_LAST_CELL + 1];
+        for (int i = DETAIL_FIRST_CELL; i <= DETAIL_LAST_CELL; i++) {
+            cellStyles[i] = row.getCell(i).getCellStyle();
+        }
+        for (int i = sheet.getLastRowNum(); i >= DETAIL_FIRST_ROW; i--) {
+            Row templateRow = sheet.getRow(i);
+            if (templateRow != null) {
+                sheet.removeRow(templateRow);
+            }
+        }
 
-            //获得第5行
-            row = sheet.getRow(4);
-            row.getCell(2).setCellValue(businessDataVO.getValidOrderCount());
-            row.getCell(4).setCellValue(businessDataVO.getUnitPrice());
+        //基于模板创建流式Excel，内存中最多保留ROW_ACCESS_WINDOW_SIZE行，其余行写入临时文件
+        SXSSFWorkbook excel = new SXSSFWorkbook(template, ROW_ACCESS_WINDOW_SIZE);
+        try {
+            SXSSFSheet detailSheet = excel.getSheet("Sheet1");
 
             //填充明细数据
-            for (int i = 0; i < 30; i++) {
-                //从开始时间一天一天加
-                LocalDate date = dateBegin.plusDays(i);
-                //查询每一天的营业数据
-                BusinessDataVO businessData = workspaceService.getBusinessData(LocalDateTime.of(date, LocalTime.MIN), LocalDateTime.of(date, LocalTime.MAX));
-
-                //获取某一行
-                row = sheet.getRow(7 + i);
-                row.getCell(1).setCellValue(date.toString());
-                row.getCell(2).setCellValue(businessData.getTurnover());
-                row.getCell(3).setCellValue(businessData.getValidOrderCount());
-                row.getCell(4).setCellValue(businessData.getOrderCompletionRate());
-                row.getCell(5).setCellValue(businessData.getUnitPrice());
-                row.getCell(6).setCellValue(businessData.getNewUsers());
-
+            LocalDate date = begin;
+            int rowNum = DETAIL_FIRST_ROW;
+            for (BusinessDataVO businessData : dailyBusinessData) {
+                Row detailRow = detailSheet.createRow(rowNum++);
+                detailRow.setHeight(rowHeight);
+                for (int i = DETAIL_FIRST_CELL; i <= DETAIL_LAST_CELL; i++) {
+                    detailRow.createCell(i).setCellStyle(cellStyles[i]);
+                }
+                detailRow.getCell(1).setCellValue(date.toString());
+                detailRow.getCell(2).setCellValue(businessData.getTurnover());
+                detailRow.getCell(3).setCellValue(businessData.getValidOrderCount());
+                detailRow.getCell(4).setCellValue(businessData.getOrderCompletionRate());
+                detailRow.getCell(5).setCellValue(businessData.getUnitPrice());
+                detailRow.getCell(6).setCellValue(businessData.getNewUsers());
+                date = date.plusDays(1);
             }
 
-            //3.通过输出流把Excel文件写到客户端浏览器
-            ServletOutputStream sos = response.getOutputStream();
-            excel.write(sos);
-
-            //关闭资源
-            sos.close();
+            //3.通过输出流把Excel文件写出
+            excel.write(out);
+        } finally {
+            //删除流式写入产生的临时文件，关闭资源
+            excel.dispose();
             excel.close();
-
-        } catch (IOException e) {
-            e.printStackTrace();
         }
-
     }
 
 }
@@ -20,6 +20,7 @@ import com.sky.vo.DishItemVO;
 import com.sky.vo.SetmealVO;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -187,10 +188,13 @@ public class SetmealServiceImpl implements SetmealService {
 
     /**
      * C端条件查询，根据分类id查询套餐
+     * 查询起售套餐时缓存，key: setmealListCache::10
      * @param setmeal
      * @return
      */
     @Override
+    @Cacheable(cacheNames = "setmealListCache", key = "#setmeal.categoryId", sync = true,
+            condition = "#setmeal.categoryId != null and #setmeal.status == T(com.sky.constant.StatusConstant).ENABLE")
     public List<Setmeal> list(Setmeal setmeal) {
         List<Setmeal> setmealList =  setmealMapper.list(setmeal);
         return setmealList;
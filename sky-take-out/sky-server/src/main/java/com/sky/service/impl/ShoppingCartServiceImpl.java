@@ -1,13 +1,13 @@
 package com.sky.service.impl;
 
+import com.sky.cart.CartStore;
+import com.sky.constant.MessageConstant;
 import com.sky.context.BaseContext;
+import com.sky.dto.ProductDTO;
 import com.sky.dto.ShoppingCartDTO;
-import com.sky.entity.Dish;
-import com.sky.entity.Setmeal;
 import com.sky.entity.ShoppingCart;
-import com.sky.mapper.DishMapper;
-import com.sky.mapper.SetmealMapper;
-import com.sky.mapper.ShoppingCartMapper;
+import com.sky.exception.ShoppingCartBusinessException;
+import com.sky.service.ProductCatalogService;
 import com.sky.service.ShoppingCartService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
@@ -22,12 +22,10 @@ import java.util.List;
 public class ShoppingCartServiceImpl implements ShoppingCartService {
 
     @Autowired
-    private ShoppingCartMapper shoppingCartMapper;
+    private CartStore cartStore;
 
     @Autowired
-    private DishMapper dishMapper;
-    @Autowired
-    private SetmealMapper setmealMapper;
+    private ProductCatalogService productCatalogService;
 
     /**
      * 添加购物车
@@ -36,45 +34,31 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
      */
     @Override
     public void addShoppingCart(ShoppingCartDTO shoppingCartDTO) {
-        //1.判断商品是否存在
         ShoppingCart shoppingCart = new ShoppingCart();
         BeanUtils.copyProperties(shoppingCartDTO, shoppingCart);
         Long userId = BaseContext.getCurrentId();
         shoppingCart.setUserId(userId);
-        //查询购物车数据
-        List<ShoppingCart> list = shoppingCartMapper.list(shoppingCart);
-        //1.1如果存在，则直接number + 1.执行update操作。
-        if (list != null && list.size() > 0) {
-            ShoppingCart cart = list.get(0);
-            cart.setNumber(cart.getNumber() + 1);
-            shoppingCartMapper.updateNumberById(cart);
+        //1.查询商品信息，商品信息从缓存中读取
+        //判断加入的是菜品还是套餐
+        Long dishId = shoppingCartDTO.getDishId();
+        ProductDTO product;
+        if (dishId != null) {
+            //本次加入的是菜品
+            product = productCatalogService.getDish(dishId);
         } else {
-            //1.2如果商品不存在，直接执行insert插入操作
-            //判断插入的是菜品还是套餐
-            Long dishId = shoppingCartDTO.getDishId();
-            if (dishId != null) {
-                //本次插入的是菜品
-                //查询对应菜品信息
-                Dish dish = dishMapper.getById(dishId);
-                shoppingCart.setName(dish.getName());
-                shoppingCart.setImage(dish.getImage());
-                shoppingCart.setAmount(dish.getPrice());
-
-            } else {
-                //本次插入的是套餐
-                Long setmealId = shoppingCartDTO.getSetmealId();
-                Setmeal setmeal = setmealMapper.getById(setmealId);
-                shoppingCart.setAmount(setmeal.getPrice());
-                shoppingCart.setImage(setmeal.getImage());
-                shoppingCart.setName(setmeal.getName());
-
-            }
-            shoppingCart.setNumber(1);
-            shoppingCart.setCreateTime(LocalDateTime.now());
-            shoppingCartMapper.insert(shoppingCart);
-            //2.不同用户购物车不同，根据用户id查询购物车数据
+            //本次加入的是套餐
+            product = productCatalogService.getSetmeal(shoppingCartDTO.getSetmealId());
         }
-
+        if (product == null) {
+            //商品已删除或id不存在
+            throw new ShoppingCartBusinessException(MessageConstant.PRODUCT_NOT_FOUND);
+        }
+        shoppingCart.setName(product.getName());
+        shoppingCart.setImage(product.getImage());
+        shoppingCart.setAmount(product.getPrice());
+        shoppingCart.setCreateTime(LocalDateTime.now());
+        //2.商品已在购物车中时number + 1，不存在时新增
+        cartStore.increase(shoppingCart);
     }
 
     /**
@@ -86,11 +70,7 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
     public List<ShoppingCart> show() {
         //获取当前用户id
         Long userId = BaseContext.getCurrentId();
-        ShoppingCart shoppingCart = ShoppingCart.builder()
-                .userId(userId)
-                .build();
-        List<ShoppingCart> list = shoppingCartMapper.list(shoppingCart);
-        return list;
+        return cartStore.list(userId);
     }
 
     /**
@@ -100,7 +80,7 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
     public void clean() {
         //获取当前微信用户id
         Long userId = BaseContext.getCurrentId();
-        shoppingCartMapper.delete(userId);
+        cartStore.clean(userId);
     }
 
     /**
@@ -116,20 +96,8 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
         ShoppingCart shoppingCart = new ShoppingCart();
         BeanUtils.copyProperties(shoppingCartDTO, shoppingCart);
         shoppingCart.setUserId(userId);
-        //判断要删除的商品是菜品还是套餐
-        List<ShoppingCart> list = shoppingCartMapper.list(shoppingCart);
-        if (list != null && list.size() > 0) {
-            shoppingCart = list.get(0);
-            Integer number = shoppingCart.getNumber();
-            //如果number = 1，直接删除
-            if (number == 1) {
-                shoppingCartMapper.deleteById(shoppingCart.getId());
-            } else {
-                //如果number > 1， 进行update -1 操作
-                shoppingCart.setNumber(number - 1);
-                shoppingCartMapper.updateNumberById(shoppingCart);
-            }
-        }
+        //数量减1，减到0时删除
+        cartStore.decrease(shoppingCart);
     }
 
 
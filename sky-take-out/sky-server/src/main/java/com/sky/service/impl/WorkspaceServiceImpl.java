@@ -1,11 +1,13 @@
 package com.sky.service.impl;
 
 import com.sky.constant.StatusConstant;
+import com.sky.entity.DailyBusinessStats;
 import com.sky.entity.Orders;
 import com.sky.mapper.DishMapper;
 import com.sky.mapper.OrderMapper;
 import com.sky.mapper.SetmealMapper;
 import com.sky.mapper.UserMapper;
+import com.sky.service.BusinessStatsService;
 import com.sky.service.WorkspaceService;
 import com.sky.vo.BusinessDataVO;
 import com.sky.vo.DishOverViewVO;
@@ -14,10 +16,15 @@ import com.sky.vo.SetmealOverViewVO;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
@@ -31,6 +38,8 @@ public class WorkspaceServiceImpl implements WorkspaceService {
     private DishMapper dishMapper;
     @Autowired
     private SetmealMapper setmealMapper;
+    @Autowired
+    private BusinessStatsService businessStatsService;
 
     /**
      * 根据时间段统计营业数据
@@ -47,6 +56,22 @@ public class WorkspaceServiceImpl implements WorkspaceService {
          * 新增用户：当日新增用户的数量
          */
 
+        //按整天统计时直接读取每日汇总数据，不再扫描订单表和用户表
+        if (begin.toLocalTime().equals(LocalTime.MIN) && end.toLocalTime().equals(LocalTime.MAX)) {
+            List<DailyBusinessStats> statsList = businessStatsService.list(begin.toLocalDate(), end.toLocalDate());
+            int totalOrderCount = 0;
+            int validOrderCount = 0;
+            BigDecimal turnover = BigDecimal.ZERO;
+            int newUsers = 0;
+            for (DailyBusinessStats stats : statsList) {
+                totalOrderCount += stats.getOrderCount();
+                validOrderCount += stats.getCompletedCount();
+                turnover = turnover.add(stats.getTurnover());
+                newUsers += stats.getNewUsers();
+            }
+            return buildBusinessData(turnover.doubleValue(), totalOrderCount, validOrderCount, newUsers);
+        }
+
         Map map = new HashMap();
         map.put("begin",begin);
         map.put("end",end);
@@ -62,6 +87,35 @@ public class WorkspaceServiceImpl implements WorkspaceService {
         //有效订单数
         Integer validOrderCount = orderMapper.countByMap(map);
 
+        //新增用户数
+        Integer newUsers = userMapper.countByMap(map);
+
+        return buildBusinessData(turnover, totalOrderCount, validOrderCount, newUsers);
+    }
+
+    /**
+     * 统计指定区间内每一天的营业数据
+     * @param begin
+     * @param end
+     * @return
+     */
+    public List<BusinessDataVO> getDailyBusinessData(LocalDate begin, LocalDate end) {
+        //一次查询读取区间内每天的汇总数据
+        return businessStatsService.list(begin, end).stream()
+                .map(stats -> buildBusinessData(stats.getTurnover().doubleValue(), stats.getOrderCount(),
+                        stats.getCompletedCount(), stats.getNewUsers()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 根据营业额、订单数和新增用户数计算营业数据
+     * @param turnover
+     * @param totalOrderCount
+     * @param validOrderCount
+     * @param newUsers
+     * @return
+     */
+    private BusinessDataVO buildBusinessData(Double turnover, Integer totalOrderCount, Integer validOrderCount, Integer newUsers) {
         Double unitPrice = 0.0;
 
         Double orderCompletionRate = 0.0;
@@ -72,9 +126,6 @@ public class WorkspaceServiceImpl implements WorkspaceService {
             unitPrice = turnover / validOrderCount;
         }
 
-        //新增用户数
-        Integer newUsers = userMapper.countByMap(map);
-
         return BusinessDataVO.builder()
                 .turnover(turnover)
                 .validOrderCount(validOrderCount)
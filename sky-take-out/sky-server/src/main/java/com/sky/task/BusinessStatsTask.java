@@ -0,0 +1,59 @@
+package com.sky.task;
+
+import com.sky.annotation.SchedulerLock;
+import com.sky.service.BusinessStatsService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+@Component
+@Slf4j
+public class BusinessStatsTask {
+
+    //每晚对账的天数，覆盖导出报表的30天；更早日期的偏差不会自动修正，需要通过管理端接口执行全量对账
+    private static final int RECONCILE_DAYS = 31;
+
+    @Autowired
+    private BusinessStatsService businessStatsService;
+
+    /**
+     * 项目启动时，汇总表为空则根据历史数据生成
+     * 多个实例同时启动时只有一个实例生成，其他实例跳过
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @SchedulerLock(value = "initBusinessStats", lockAtMostFor = 30 * 60 * 1000)
+    public void initBusinessStats() {
+        log.info("初始化每日营业数据汇总：{}", LocalDateTime.now());
+        businessStatsService.initIfEmpty();
+    }
+
+    /**
+     * 每日营业数据对账
+     */
+    @Scheduled(cron = "0 30 1 * * ? ") //每天凌晨一点半，在处理派送中订单之后执行
+    @SchedulerLock(value = "reconcileBusinessStats", lockAtLeastFor = 60 * 1000)
+    public void reconcileBusinessStats() {
+        log.info("每日营业数据对账：{}", LocalDateTime.now());
+        //当天的数据仍在增量更新，只修正到昨天
+        LocalDate end = LocalDate.now().minusDays(1);
+        businessStatsService.reconcile(end.minusDays(RECONCILE_DAYS - 1), end);
+    }
+
+    /**
+     * 全量营业数据对账，由管理端手动触发，与每日对账使用同一把锁，不会同时执行
+     *
+     * @return 执行完成返回true，其他实例正在对账时被锁切面跳过，返回null
+     */
+    @SchedulerLock(value = "reconcileBusinessStats", lockAtMostFor = 30 * 60 * 1000)
+    public Boolean reconcileAllBusinessStats() {
+        log.info("全量营业数据对账：{}", LocalDateTime.now());
+        businessStatsService.reconcileAll();
+        return Boolean.TRUE;
+    }
+}
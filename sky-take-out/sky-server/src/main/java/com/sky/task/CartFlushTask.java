@@ -0,0 +1,36 @@
+package com.sky.task;
+
+import com.sky.cart.RedisCartStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+
+/**
+ * 购物车保存在redis中时，定时把修改过的购物车写回mysql
+ */
+@Component
+@ConditionalOnProperty(prefix = "sky.cart", name = "store", havingValue = "redis")
+@Slf4j
+public class CartFlushTask {
+
+    @Autowired
+    private RedisCartStore redisCartStore;
+
+    @Scheduled(fixedDelayString = "${sky.cart.flush-interval:5000}")
+    public void flushCart() {
+        redisCartStore.flush();
+    }
+
+    /**
+     * 应用停止前写回一次，减少未写回的数据
+     */
+    @PreDestroy
+    public void flushOnShutdown() {
+        log.info("应用停止，购物车写回mysql");
+        redisCartStore.flush();
+    }
+}
@@ -0,0 +1,39 @@
+package com.sky.task;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 定时清理http连接池中过期和空闲的连接，连接池已满时记录告警
+ * 连接池使用情况通过HttpClientConfiguration中注册的httpclient.pool.*指标查看
+ */
+@Component
+@Slf4j
+public class HttpClientPoolTask {
+
+    @Autowired
+    private PoolingHttpClientConnectionManager httpClientConnectionManager;
+
+    @Value("${sky.http-client.idle-timeout:30000}")
+    private long idleTimeout;
+
+    @Scheduled(fixedDelayString = "${sky.http-client.evict-interval:10000}")
+    public void evictConnections() {
+        httpClientConnectionManager.closeExpiredConnections();
+        httpClientConnectionManager.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+
+        PoolStats stats = httpClientConnectionManager.getTotalStats();
+        if (stats.getPending() > 0) {
+            //有请求在等待连接，说明连接池已占满
+            log.warn("http连接池已满，使用中:{}，空闲:{}，等待中:{}，最大:{}",
+                    stats.getLeased(), stats.getAvailable(), stats.getPending(), stats.getMax());
+        }
+    }
+}
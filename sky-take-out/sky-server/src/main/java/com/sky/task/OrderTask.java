@@ -1,14 +1,23 @@
 package com.sky.task;
 
+import com.sky.annotation.SchedulerLock;
 import com.sky.entity.Orders;
 import com.sky.mapper.OrderMapper;
+import com.sky.order.OrderTimeoutQueue;
+import com.sky.properties.OrderProperties;
+import com.sky.properties.SchedulerProperties;
+import com.sky.service.BusinessStatsService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Collectors;
 
 @Component
 @Slf4j
@@ -16,26 +25,78 @@ public class OrderTask {
 
     @Autowired
     private OrderMapper orderMapper;
+    @Autowired
+    private BusinessStatsService businessStatsService;
+    @Autowired
+    private OrderTimeoutQueue orderTimeoutQueue;
+    @Autowired
+    private OrderProperties orderProperties;
+    @Autowired
+    private SchedulerProperties schedulerProperties;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * 项目启动时根据数据库中的待付款订单重建超时队列
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildTimeoutQueue() {
+        int batchSize = orderProperties.getTimeoutBatchSize();
+        int count = 0;
+        Long afterId = null;
+        List<Orders> ordersList;
+        try {
+            do {
+                //按id分批查询，已在队列中的订单重复加入不影响结果
+                ordersList = orderMapper.listByStatusAndOrderTimeLT(Orders.PENDING_PAYMENT, null, afterId, null, null, batchSize);
+                if (!ordersList.isEmpty()) {
+                    orderTimeoutQueue.addAll(ordersList);
+                    count += ordersList.size();
+                    afterId = ordersList.get(ordersList.size() - 1).getId();
+                }
+            } while (ordersList.size() == batchSize);
+            log.info("重建订单超时队列，待付款订单数：{}", count);
+        } catch (Exception e) {
+            //未加入队列的订单由兜底任务取消
+            log.error("重建订单超时队列失败", e);
+        }
+    }
+
+    /**
+     * 取消超时队列中已到期的订单
+     * 每个订单只会被一个实例从队列中取出，多实例同时执行不需要加锁
+     */
+    @Scheduled(fixedDelayString = "${sky.order.timeout-poll-interval:1000}")
+    public void processExpiredOrder() {
+        int batchSize = orderProperties.getTimeoutBatchSize();
+        List<Long> ids;
+        do {
+            ids = orderTimeoutQueue.pollExpired(batchSize);
+            if (!ids.isEmpty()) {
+                cancelTimeoutOrders(ids);
+            }
+        } while (ids.size() == batchSize);
+    }
 
     /**
      * 处理超时订单的方法
+     * 兜底处理加入超时队列失败或取出后未能取消的订单
      */
-    @Scheduled(cron = "0 * * * * ? ") //每分钟触发一次
+    @Scheduled(cron = "0 0/5 * * * ? ") //每5分钟触发一次
+    @SchedulerLock(value = "processTimeoutOrder", lockAtLeastFor = 60 * 1000, sharded = true)
     public void processTimeoutOrder(){
         log.info("定时处理超时订单：{}", LocalDateTime.now());
 
-        LocalDateTime time = LocalDateTime.now().minusMinutes(15);//当前时间减去15分钟
-        List<Orders> ordersList = orderMapper.getByStatusAndOrderTimeoutLT(Orders.UN_PAID, time);
-        //判断是否为空
-        if (ordersList != null && ordersList.size() > 0 ){
-            for (Orders orders : ordersList) {
-                orders.setStatus(Orders.CANCELLED);
-                orders.setCancelReason("订单超时自动取消！");
-                orders.setCancelTime(LocalDateTime.now());
-
-                orderMapper.update(orders);
+        LocalDateTime time = LocalDateTime.now().minusSeconds(orderProperties.getPayTimeout());
+        int batchSize = orderProperties.getTimeoutBatchSize();
+        List<Orders> ordersList;
+        do {
+            ordersList = orderMapper.listByStatusAndOrderTimeLT(Orders.PENDING_PAYMENT, time, null,
+                    schedulerProperties.getShardTotal(), schedulerProperties.getShardIndex(), batchSize);
+            if (!ordersList.isEmpty()) {
+                cancelTimeoutOrders(ordersList.stream().map(Orders::getId).collect(Collectors.toList()));
             }
-        }
+        } while (ordersList.size() == batchSize);
     }
 
 
@@ -43,17 +104,54 @@ public class OrderTask {
      * 处理一直处于派送中的订单的方法
      */
     @Scheduled(cron = "0 0 1 * * ? ") //每天凌晨一点处理昨天的订单
+    @SchedulerLock(value = "processDeliveryOrder", lockAtLeastFor = 60 * 1000, sharded = true)
     public void processDeliveryOrder(){
         log.info("处理一直处于派送中的订单:{}",LocalDateTime.now());
 
-        LocalDateTime time = LocalDateTime.now().minusMinutes(60);//当前时间减去15分钟
-        List<Orders> ordersList = orderMapper.getByStatusAndOrderTimeoutLT(Orders.DELIVERY_IN_PROGRESS, time);
-        //判断是否为空
-        if (ordersList != null && ordersList.size() > 0 ){
-            for (Orders orders : ordersList) {
-                orders.setStatus(Orders.COMPLETED);
-                orderMapper.update(orders);
+        LocalDateTime time = LocalDateTime.now().minusMinutes(orderProperties.getDeliveryTimeout());
+        int batchSize = orderProperties.getTimeoutBatchSize();
+        List<Orders> ordersList;
+        do {
+            ordersList = orderMapper.listByStatusAndOrderTimeLT(Orders.DELIVERY_IN_PROGRESS, time, null,
+                    schedulerProperties.getShardTotal(), schedulerProperties.getShardIndex(), batchSize);
+            if (!ordersList.isEmpty()) {
+                completeDeliveryOrders(ordersList.stream().map(Orders::getId).collect(Collectors.toList()));
             }
-        }
+        } while (ordersList.size() == batchSize);
+    }
+
+    /**
+     * 批量完成派送中的订单，只累加本次实际完成的订单的营业数据
+     *
+     * @param ids
+     */
+    private void completeDeliveryOrders(List<Long> ids) {
+        transactionTemplate.executeWithoutResult(status -> {
+            //查询期间可能已被商家手动完成或取消，锁定仍在派送中的订单后再修改，修改的订单即为锁定的订单
+            List<Orders> ordersList = orderMapper.listByIdsAndStatusForUpdate(ids, Orders.DELIVERY_IN_PROGRESS);
+            if (ordersList.isEmpty()) {
+                return;
+            }
+            Orders orders = Orders.builder().status(Orders.COMPLETED).build();
+            orderMapper.updateStatusByIds(ordersList.stream().map(Orders::getId).collect(Collectors.toList()),
+                    Orders.DELIVERY_IN_PROGRESS, orders);
+            //按天汇总后累加营业数据
+            businessStatsService.ordersCompleted(ordersList);
+        });
+    }
+
+    /**
+     * 批量取消超时订单，只取消仍处于待付款状态的订单
+     *
+     * @param ids
+     */
+    private void cancelTimeoutOrders(List<Long> ids) {
+        Orders orders = Orders.builder()
+                .status(Orders.CANCELLED)
+                .cancelReason("订单超时自动取消！")
+                .cancelTime(LocalDateTime.now())
+                .build();
+        Integer count = orderMapper.updateStatusByIds(ids, Orders.PENDING_PAYMENT, orders);
+        log.info("取消超时订单：{}，实际取消：{}", ids.size(), count);
     }
 }
@@ -0,0 +1,25 @@
+package com.sky.task;
+
+import com.sky.service.ReportExportService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 定时清理过期的报表导出任务和文件
+ * 导出文件保存在本机目录，每个实例清理自己的目录，不需要加锁
+ */
+@Component
+@Slf4j
+public class ReportExportTask {
+
+    @Autowired
+    private ReportExportService reportExportService;
+
+    @Scheduled(cron = "0 0/10 * * * ?") //每10分钟触发一次
+    public void cleanExpired() {
+        log.debug("清理过期的报表导出任务和文件");
+        reportExportService.cleanExpired();
+    }
+}
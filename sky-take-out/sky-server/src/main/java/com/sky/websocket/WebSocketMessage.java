@@ -0,0 +1,33 @@
+package com.sky.websocket;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 通过redis频道在实例间广播的WebSocket消息
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WebSocketMessage implements Serializable {
+
+    public static final String TARGET_ALL = "all";
+    public static final String TARGET_SHOP = "shop";
+    public static final String TARGET_EMPLOYEE = "employee";
+
+    //消息序号，客户端重连时按序号补发，为空时不补发
+    private Long seq;
+
+    //接收方类型 all、shop、employee
+    private String targetType;
+
+    //接收方的门店id或员工id，发送给全部会话时为空
+    private Long targetId;
+
+    //发送给客户端的消息内容
+    private String payload;
+
+}
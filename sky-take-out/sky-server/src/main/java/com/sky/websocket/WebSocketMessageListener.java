@@ -0,0 +1,31 @@
+package com.sky.websocket;
+
+import com.alibaba.fastjson.JSON;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 订阅WebSocket消息频道，把其他实例（包括本实例）发布的消息转发给本机的会话
+ */
+@Slf4j
+public class WebSocketMessageListener implements MessageListener {
+
+    private final WebSocketServer webSocketServer;
+
+    public WebSocketMessageListener(WebSocketServer webSocketServer) {
+        this.webSocketServer = webSocketServer;
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            WebSocketMessage webSocketMessage = JSON.parseObject(new String(message.getBody(), StandardCharsets.UTF_8), WebSocketMessage.class);
+            webSocketServer.deliver(webSocketMessage);
+        } catch (Exception e) {
+            log.error("处理WebSocket广播消息失败", e);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.sky.websocket;
+
+import com.sky.properties.WebSocketProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 最近推送消息的环形缓冲区，客户端重连时补发断开期间的消息
+ * 每个实例都会收到全部消息，因此本机缓冲区保存的是全部会话的最近消息
+ */
+@Component
+@Slf4j
+public class WebSocketReplayBuffer {
+
+    private static final String SEQ = "seq";
+    private static final String TARGET_TYPE = "targetType";
+    private static final String TARGET_ID = "targetId";
+    private static final String PAYLOAD = "payload";
+
+    @Autowired
+    private WebSocketProperties webSocketProperties;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    //按序号递增保存的消息，写满后覆盖最早的消息，访问时需要持有当前对象的锁
+    private WebSocketMessage[] buffer;
+    //下一条消息写入的位置和当前保存的消息数
+    private int head;
+    private int size;
+
+    @PostConstruct
+    public void init() {
+        buffer = new WebSocketMessage[Math.max(webSocketProperties.getReplayCapacity(), 0)];
+    }
+
+    /**
+     * 保存一条消息，没有序号的消息不保存
+     *
+     * @param webSocketMessage
+     */
+    public synchronized void add(WebSocketMessage webSocketMessage) {
+        if (buffer.length == 0 || webSocketMessage.getSeq() == null) {
+            return;
+        }
+        buffer[head] = webSocketMessage;
+        head = (head + 1) % buffer.length;
+        if (size < buffer.length) {
+            size++;
+        }
+    }
+
+    /**
+     * 写入redis stream，超过保留条数的旧消息由redis近似裁剪
+     *
+     * @param webSocketMessage
+     */
+    public void append(WebSocketMessage webSocketMessage) {
+        if (!webSocketProperties.isReplayStream() || webSocketMessage.getSeq() == null) {
+            return;
+        }
+        Map<String, String> fields = new HashMap<>();
+        fields.put(SEQ, webSocketMessage.getSeq().toString());
+        fields.put(TARGET_TYPE, webSocketMessage.getTargetType());
+        if (webSocketMessage.getTargetId() != null) {
+            fields.put(TARGET_ID, webSocketMessage.getTargetId().toString());
+        }
+        fields.put(PAYLOAD, webSocketMessage.getPayload());
+        try {
+            String streamKey = webSocketProperties.getStreamKey();
+            stringRedisTemplate.opsForStream().add(StreamRecords.string(fields).withStreamKey(streamKey));
+            stringRedisTemplate.opsForStream().trim(streamKey, webSocketProperties.getReplayCapacity(), true);
+        } catch (Exception e) {
+            log.warn("WebSocket消息写入redis stream失败:{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 查询序号大于lastSeq的消息，按序号升序返回
+     * 本机缓冲区不包含lastSeq之后的全部消息且开启了replay-stream时，从redis stream中查询
+     *
+     * @param lastSeq
+     * @return
+     */
+    public List<WebSocketMessage> since(long lastSeq) {
+        List<WebSocketMessage> messages = new ArrayList<>();
+        boolean complete;
+        synchronized (this) {
+            int start = (head - size + buffer.length) % Math.max(buffer.length, 1);
+            for (int i = 0; i < size; i++) {
+                WebSocketMessage message = buffer[(start + i) % buffer.length];
+                if (message.getSeq() > lastSeq) {
+                    messages.add(message);
+                }
+            }
+            //缓冲区中最早的消息就是lastSeq的下一条或更早，说明没有遗漏
+            complete = size > 0 && buffer[start].getSeq() <= lastSeq + 1;
+        }
+        if (complete || !webSocketProperties.isReplayStream()) {
+            return messages;
+        }
+        return readStream(lastSeq, messages);
+    }
+
+    private List<WebSocketMessage> readStream(long lastSeq, List<WebSocketMessage> local) {
+        try {
+            List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                    .range(webSocketProperties.getStreamKey(), Range.unbounded());
+            List<WebSocketMessage> messages = new ArrayList<>();
+            if (records == null) {
+                return local;
+            }
+            for (MapRecord<String, Object, Object> record : records) {
+                Map<Object, Object> fields = record.getValue();
+                long seq = Long.parseLong(fields.get(SEQ).toString());
+                if (seq <= lastSeq) {
+                    continue;
+                }
+                Object targetId = fields.get(TARGET_ID);
+                messages.add(new WebSocketMessage(seq,
+                        fields.get(TARGET_TYPE).toString(),
+                        targetId == null ? null : Long.valueOf(targetId.toString()),
+                        fields.get(PAYLOAD).toString()));
+            }
+            //单实例时写入stream不在生成序号的锁内，按序号重新排序
+            messages.sort(Comparator.comparing(WebSocketMessage::getSeq));
+            //stream中的消息比本机少时（如redis数据被清理）使用本机缓冲区
+            return messages.size() >= local.size() ? messages : local;
+        } catch (Exception e) {
+            log.warn("从redis stream读取WebSocket消息失败:{}", e.getMessage());
+            return local;
+        }
+    }
+}
@@ -1,33 +1,180 @@
 package com.sky.websocket;
 
+import com.sky.constant.JwtClaimsConstant;
+import com.sky.properties.JwtProperties;
+import com.sky.properties.ShopProperties;
+import com.sky.properties.WebSocketProperties;
+import com.sky.utils.JwtUtil;
+import io.jsonwebtoken.Claims;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Component;
+
+import javax.websocket.CloseReason;
 import javax.websocket.OnClose;
+import javax.websocket.OnError;
 import javax.websocket.OnMessage;
 import javax.websocket.OnOpen;
 import javax.websocket.Session;
 import javax.websocket.server.PathParam;
 import javax.websocket.server.ServerEndpoint;
+import java.io.IOException;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * WebSocket服务
+ * 每个连接由容器创建一个实例，会话和配置保存在静态字段中，由Spring创建的实例在启动时注入
+ * 会话按门店和员工建立索引，消息只发送给对应门店或员工的会话
+ * 每条消息带有递增的序号seq，客户端重连时通过lastSeq参数补发断开期间的消息
  */
 @Component
 @ServerEndpoint("/ws/{sid}")
+@Slf4j
 public class WebSocketServer {
 
+    private static final String SENDER = "sender";
+    private static final String TOKEN = "token";
+    private static final String LAST_SEQ = "lastSeq";
+
     //存放会话对象
-    private static Map<String, Session> sessionMap = new HashMap();
+    private static final Map<String, WebSocketSessionSender> sessionMap = new ConcurrentHashMap<>();
+    //按门店id、员工id索引的会话
+    private static final Map<Long, Set<WebSocketSessionSender>> shopSessionMap = new ConcurrentHashMap<>();
+    private static final Map<Long, Set<WebSocketSessionSender>> employeeSessionMap = new ConcurrentHashMap<>();
+    //单实例部署时的消息序号，生成序号和提交发送在同一把锁内，保证按序号顺序发送
+    private static final AtomicLong localSeq = new AtomicLong();
+
+    //生成序号、写入stream和发布在同一个脚本中原子执行，多个实例发布的消息按序号顺序到达订阅方
+    //KEYS[1] 序号key，KEYS[2] stream key；ARGV：目标类型、目标id、消息内容、stream保留条数、是否写入stream、频道
+    private static final RedisScript<Long> PUBLISH_SCRIPT = new DefaultRedisScript<>(
+            "local seq = redis.call('INCR', KEYS[1]) " +
+                    "local payload = ARGV[3] " +
+                    "if string.sub(payload, 1, 1) == '{' then " +
+                    "  local body = (string.gsub(string.sub(payload, 2), '^%s+', '')) " +
+                    "  if string.sub(body, 1, 1) == '}' then " +
+                    "    payload = '{\"seq\":' .. seq .. body " +
+                    "  else " +
+                    "    payload = '{\"seq\":' .. seq .. ',' .. body " +
+                    "  end " +
+                    "end " +
+                    "if ARGV[5] == '1' then " +
+                    "  local fields = {'seq', seq, 'targetType', ARGV[1], 'payload', payload} " +
+                    "  if ARGV[2] ~= '' then " +
+                    "    table.insert(fields, 'targetId') " +
+                    "    table.insert(fields, ARGV[2]) " +
+                    "  end " +
+                    "  redis.pcall('XADD', KEYS[2], 'MAXLEN', '~', ARGV[4], '*', unpack(fields)) " +
+                    "end " +
+                    "local message = {seq = seq, targetType = ARGV[1], payload = payload} " +
+                    "if ARGV[2] ~= '' then " +
+                    "  message['targetId'] = tonumber(ARGV[2]) " +
+                    "end " +
+                    "redis.call('PUBLISH', ARGV[6], cjson.encode(message)) " +
+                    "return seq", Long.class);
+
+    private static WebSocketProperties webSocketProperties;
+    private static JwtProperties jwtProperties;
+    private static ShopProperties shopProperties;
+    private static ThreadPoolTaskExecutor webSocketExecutor;
+    private static TaskScheduler taskScheduler;
+    private static StringRedisTemplate stringRedisTemplate;
+    private static WebSocketReplayBuffer webSocketReplayBuffer;
+
+    @Autowired
+    public void setWebSocketProperties(WebSocketProperties webSocketProperties) {
+        WebSocketServer.webSocketProperties = webSocketProperties;
+    }
+
+    @Autowired
+    public void setJwtProperties(JwtProperties jwtProperties) {
+        WebSocketServer.jwtProperties = jwtProperties;
+    }
+
+    @Autowired
+    public void setShopProperties(ShopProperties shopProperties) {
+        WebSocketServer.shopProperties = shopProperties;
+    }
+
+    @Autowired
+    public void setWebSocketExecutor(ThreadPoolTaskExecutor webSocketExecutor) {
+        WebSocketServer.webSocketExecutor = webSocketExecutor;
+    }
+
+    @Autowired
+    public void setTaskScheduler(TaskScheduler taskScheduler) {
+        WebSocketServer.taskScheduler = taskScheduler;
+    }
+
+    @Autowired
+    public void setStringRedisTemplate(StringRedisTemplate stringRedisTemplate) {
+        WebSocketServer.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    @Autowired
+    public void setWebSocketReplayBuffer(WebSocketReplayBuffer webSocketReplayBuffer) {
+        WebSocketServer.webSocketReplayBuffer = webSocketReplayBuffer;
+    }
 
     /**
      * 连接建立成功调用的方法
+     * 校验连接地址中的管理端jwt令牌，解析出员工id和门店id后建立索引
      */
     @OnOpen
     public void onOpen(Session session, @PathParam("sid") String sid) {
-        System.out.println("客户端：" + sid + "建立连接");
-        sessionMap.put(sid, session);
+        WebSocketSessionSender sender = new WebSocketSessionSender(sid, session, webSocketProperties, taskScheduler);
+        sender.setShopId(shopProperties.getId());
+
+        String token = getParameter(session, TOKEN);
+        if (token == null) {
+            if (webSocketProperties.isRequireToken()) {
+                log.warn("客户端：{}未携带令牌，拒绝连接", sid);
+                reject(session);
+                return;
+            }
+        } else {
+            try {
+                Claims claims = JwtUtil.parseJWT(jwtProperties.getAdminSecretKey(), token);
+                sender.setEmpId(Long.valueOf(claims.get(JwtClaimsConstant.EMP_ID).toString()));
+                Object shopId = claims.get(JwtClaimsConstant.SHOP_ID);
+                if (shopId != null) {
+                    sender.setShopId(Long.valueOf(shopId.toString()));
+                }
+            } catch (Exception e) {
+                log.warn("客户端：{}令牌校验失败，拒绝连接", sid);
+                reject(session);
+                return;
+            }
+        }
+
+        log.info("客户端：{}建立连接，门店id：{}，员工id：{}", sid, sender.getShopId(), sender.getEmpId());
+        session.getUserProperties().put(SENDER, sender);
+
+        Long lastSeq = parseSeq(getParameter(session, LAST_SEQ));
+        if (lastSeq == null) {
+            open(sender, null);
+            return;
+        }
+        try {
+            //在WebSocket线程池中登记并补发，之前的消息都通过补发发送，之后的消息都在补发完成后放入发送队列，不会重复或乱序
+            webSocketExecutor.execute(() -> open(sender, lastSeq));
+        } catch (TaskRejectedException e) {
+            log.warn("WebSocket推送任务过多，客户端：{}不补发消息", sid);
+            open(sender, null);
+        }
     }
 
     /**
@@ -37,7 +184,7 @@ public class WebSocketServer {
      */
     @OnMessage
     public void onMessage(String message, @PathParam("sid") String sid) {
-        System.out.println("收到来自客户端：" + sid + "的信息:" + message);
+        log.info("收到来自客户端：{}的信息:{}", sid, message);
     }
 
     /**
@@ -46,9 +193,20 @@ public class WebSocketServer {
      * @param sid
      */
     @OnClose
-    public void onClose(@PathParam("sid") String sid) {
-        System.out.println("连接断开:" + sid);
-        sessionMap.remove(sid);
+    public void onClose(Session session, @PathParam("sid") String sid) {
+        log.info("连接断开:{}", sid);
+        WebSocketSessionSender sender = (WebSocketSessionSender) session.getUserProperties().get(SENDER);
+        if (sender != null) {
+            sender.markClosed();
+            //只移除当前连接，避免把同一个sid的新连接移除
+            sessionMap.remove(sid, sender);
+            unregister(sender);
+        }
+    }
+
+    @OnError
+    public void onError(Session session, Throwable error, @PathParam("sid") String sid) {
+        log.warn("客户端：{}连接异常:{}", sid, error.getMessage());
     }
 
     /**
@@ -57,15 +215,216 @@ public class WebSocketServer {
      * @param message
      */
     public void sendToAllClient(String message) {
-        Collection<Session> sessions = sessionMap.values();
-        for (Session session : sessions) {
+        publish(WebSocketMessage.TARGET_ALL, null, message);
+    }
+
+    /**
+     * 发送给指定门店的会话
+     *
+     * @param shopId
+     * @param message
+     */
+    public void sendToShop(Long shopId, String message) {
+        publish(WebSocketMessage.TARGET_SHOP, shopId, message);
+    }
+
+    /**
+     * 发送给指定员工的会话
+     *
+     * @param empId
+     * @param message
+     */
+    public void sendToEmployee(Long empId, String message) {
+        publish(WebSocketMessage.TARGET_EMPLOYEE, empId, message);
+    }
+
+    /**
+     * 生成消息序号后发布
+     * 多实例部署时通过脚本在redis中生成序号并发布到频道，由每个实例转发给本机的会话；发布失败时只发送给本机的会话
+     *
+     * @param targetType
+     * @param targetId
+     * @param message
+     */
+    private void publish(String targetType, Long targetId, String message) {
+        if (webSocketProperties.isCluster()) {
             try {
-                //服务器向客户端发送消息
-                session.getBasicRemote().sendText(message);
+                //多实例共用redis中的序号，序号生成和发布的顺序一致
+                stringRedisTemplate.execute(PUBLISH_SCRIPT,
+                        Arrays.asList(webSocketProperties.getSeqKey(), webSocketProperties.getStreamKey()),
+                        targetType,
+                        targetId == null ? "" : targetId.toString(),
+                        message == null ? "" : message,
+                        String.valueOf(webSocketProperties.getReplayCapacity()),
+                        webSocketProperties.isReplayStream() ? "1" : "0",
+                        webSocketProperties.getTopic());
+                return;
             } catch (Exception e) {
-                e.printStackTrace();
+                log.error("发布WebSocket消息失败，只发送给本机的客户端", e);
+                //序号可能已与其他实例不一致，不保存到补发缓冲区
+                deliver(new WebSocketMessage(null, targetType, targetId, message));
+                return;
+            }
+        }
+        WebSocketMessage webSocketMessage;
+        synchronized (localSeq) {
+            long seq = localSeq.incrementAndGet();
+            webSocketMessage = new WebSocketMessage(seq, targetType, targetId, withSeq(message, seq));
+            deliver(webSocketMessage);
+        }
+        webSocketReplayBuffer.append(webSocketMessage);
+    }
+
+    /**
+     * 在JSON对象格式的消息中加入seq字段，其他格式的消息不修改
+     *
+     * @param message
+     * @param seq
+     * @return
+     */
+    private String withSeq(String message, Long seq) {
+        if (message == null || !message.startsWith("{")) {
+            return message;
+        }
+        String body = message.substring(1).trim();
+        return "{\"seq\":" + seq + (body.startsWith("}") ? "" : ",") + body;
+    }
+
+    /**
+     * 发送给本机的会话
+     * 在WebSocket线程池中把消息放入接收方各会话的发送队列，调用方不等待发送完成
+     *
+     * @param webSocketMessage
+     */
+    public void deliver(WebSocketMessage webSocketMessage) {
+        String message = webSocketMessage.getPayload();
+        try {
+            webSocketExecutor.execute(() -> {
+                //保存和发送在同一个单线程中执行，与重连补发的顺序一致
+                webSocketReplayBuffer.add(webSocketMessage);
+                for (WebSocketSessionSender sender : getTargetSessions(webSocketMessage)) {
+                    sender.send(message);
+                }
+            });
+        } catch (TaskRejectedException e) {
+            log.warn("WebSocket推送任务过多，丢弃消息:{}", message);
+        }
+    }
+
+    /**
+     * 登记会话，lastSeq不为空时补发序号大于lastSeq且接收方包含当前会话的消息
+     *
+     * @param sender
+     * @param lastSeq
+     */
+    private void open(WebSocketSessionSender sender, Long lastSeq) {
+        if (sender.isClosed()) {
+            return;
+        }
+        WebSocketSessionSender old = sessionMap.put(sender.getSid(), sender);
+        if (old != null && old != sender) {
+            //同一个sid重复连接时不再向旧连接发送消息
+            old.markClosed();
+            unregister(old);
+        }
+        register(sender);
+        if (sender.isClosed()) {
+            //登记期间连接已关闭
+            sessionMap.remove(sender.getSid(), sender);
+            unregister(sender);
+            return;
+        }
+
+        if (lastSeq != null) {
+            List<WebSocketMessage> messages = webSocketReplayBuffer.since(lastSeq);
+            log.info("客户端：{}从序号{}开始补发{}条消息", sender.getSid(), lastSeq, messages.size());
+            for (WebSocketMessage message : messages) {
+                if (isTarget(message, sender)) {
+                    sender.send(message.getPayload());
+                }
             }
         }
     }
 
+    private Long parseSeq(String lastSeq) {
+        if (lastSeq == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(lastSeq);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private boolean isTarget(WebSocketMessage webSocketMessage, WebSocketSessionSender sender) {
+        if (WebSocketMessage.TARGET_SHOP.equals(webSocketMessage.getTargetType())) {
+            return Objects.equals(webSocketMessage.getTargetId(), sender.getShopId());
+        }
+        if (WebSocketMessage.TARGET_EMPLOYEE.equals(webSocketMessage.getTargetType())) {
+            return Objects.equals(webSocketMessage.getTargetId(), sender.getEmpId());
+        }
+        return true;
+    }
+
+    private Collection<WebSocketSessionSender> getTargetSessions(WebSocketMessage webSocketMessage) {
+        Set<WebSocketSessionSender> senders = null;
+        if (WebSocketMessage.TARGET_SHOP.equals(webSocketMessage.getTargetType())) {
+            senders = shopSessionMap.get(webSocketMessage.getTargetId());
+        } else if (WebSocketMessage.TARGET_EMPLOYEE.equals(webSocketMessage.getTargetType())) {
+            senders = employeeSessionMap.get(webSocketMessage.getTargetId());
+        } else {
+            return sessionMap.values();
+        }
+        return senders == null ? Collections.emptySet() : senders;
+    }
+
+    private void register(WebSocketSessionSender sender) {
+        addToIndex(shopSessionMap, sender.getShopId(), sender);
+        if (sender.getEmpId() != null) {
+            addToIndex(employeeSessionMap, sender.getEmpId(), sender);
+        }
+    }
+
+    private void unregister(WebSocketSessionSender sender) {
+        removeFromIndex(shopSessionMap, sender.getShopId(), sender);
+        if (sender.getEmpId() != null) {
+            removeFromIndex(employeeSessionMap, sender.getEmpId(), sender);
+        }
+    }
+
+    private void addToIndex(Map<Long, Set<WebSocketSessionSender>> index, Long id, WebSocketSessionSender sender) {
+        index.compute(id, (key, senders) -> {
+            if (senders == null) {
+                senders = ConcurrentHashMap.newKeySet();
+            }
+            senders.add(sender);
+            return senders;
+        });
+    }
+
+    private void removeFromIndex(Map<Long, Set<WebSocketSessionSender>> index, Long id, WebSocketSessionSender sender) {
+        //集合为空时移除索引项，增删都在compute中执行，避免并发时丢失新加入的会话
+        index.computeIfPresent(id, (key, senders) -> {
+            senders.remove(sender);
+            return senders.isEmpty() ? null : senders;
+        });
+    }
+
+    private String getParameter(Session session, String name) {
+        List<String> values = session.getRequestParameterMap().get(name);
+        if (values == null || values.isEmpty() || values.get(0).isEmpty()) {
+            return null;
+        }
+        return values.get(0);
+    }
+
+    private void reject(Session session) {
+        try {
+            session.close(new CloseReason(CloseReason.CloseCodes.VIOLATED_POLICY, "令牌校验失败"));
+        } catch (IOException e) {
+            log.debug("关闭WebSocket连接失败:{}", e.getMessage());
+        }
+    }
+
 }
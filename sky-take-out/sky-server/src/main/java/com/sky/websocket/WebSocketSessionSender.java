@@ -0,0 +1,206 @@
+package com.sky.websocket;
+
+import com.sky.properties.WebSocketProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.TaskScheduler;
+
+import javax.websocket.CloseReason;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.StringJoiner;
+
+/**
+ * 单个WebSocket会话的发送器
+ * 消息先放入有界队列，同一时间只有一条消息在异步发送，发送完成后在回调中继续发送下一条，
+ * 调用方不会被慢速客户端阻塞；队列满时按策略丢弃消息或关闭会话
+ * 开启合并发送时，空闲会话收到消息后等待一个时间窗口，窗口内和发送期间积压的消息合并为一个JSON数组发送
+ */
+@Slf4j
+public class WebSocketSessionSender {
+
+    public static final String DROP_OLDEST = "drop-oldest";
+    public static final String DROP_NEWEST = "drop-newest";
+    public static final String CLOSE = "close";
+
+    private final String sid;
+    private final Session session;
+    private final int capacity;
+    private final String overflowPolicy;
+    private final long coalesceWindow;
+    private final TaskScheduler taskScheduler;
+
+    //待发送的消息，访问时需要持有当前对象的锁
+    private final Deque<String> queue = new ArrayDeque<>();
+    //是否有消息正在发送
+    private boolean sending;
+    private boolean closed;
+
+    //会话所属的门店id和员工id，未携带令牌的连接员工id为空
+    private volatile Long shopId;
+    private volatile Long empId;
+
+    public WebSocketSessionSender(String sid, Session session, WebSocketProperties webSocketProperties, TaskScheduler taskScheduler) {
+        this.sid = sid;
+        this.session = session;
+        this.capacity = webSocketProperties.getQueueCapacity();
+        this.overflowPolicy = webSocketProperties.getOverflowPolicy();
+        this.coalesceWindow = webSocketProperties.getCoalesceWindow();
+        this.taskScheduler = taskScheduler;
+        session.getAsyncRemote().setSendTimeout(webSocketProperties.getSendTimeout());
+    }
+
+    public String getSid() {
+        return sid;
+    }
+
+    public Session getSession() {
+        return session;
+    }
+
+    public Long getShopId() {
+        return shopId;
+    }
+
+    public void setShopId(Long shopId) {
+        this.shopId = shopId;
+    }
+
+    public Long getEmpId() {
+        return empId;
+    }
+
+    public void setEmpId(Long empId) {
+        this.empId = empId;
+    }
+
+    /**
+     * 消息加入发送队列，没有正在发送的消息时立即开始发送
+     *
+     * @param message
+     */
+    public void send(String message) {
+        String next;
+        boolean overflow = false;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            if (queue.size() >= capacity) {
+                if (DROP_NEWEST.equals(overflowPolicy)) {
+                    log.warn("WebSocket客户端{}发送队列已满，丢弃新消息", sid);
+                    return;
+                }
+                if (CLOSE.equals(overflowPolicy)) {
+                    log.warn("WebSocket客户端{}发送队列已满，关闭连接", sid);
+                    closed = true;
+                    queue.clear();
+                    overflow = true;
+                } else {
+                    log.warn("WebSocket客户端{}发送队列已满，丢弃最早的消息", sid);
+                    queue.pollFirst();
+                }
+            }
+            if (overflow) {
+                next = null;
+            } else {
+                queue.offerLast(message);
+                if (sending) {
+                    return;
+                }
+                sending = true;
+                if (coalesceWindow > 0) {
+                    //等待一个时间窗口，合并窗口内的消息
+                    next = null;
+                } else {
+                    next = queue.pollFirst();
+                }
+            }
+        }
+        if (overflow) {
+            close(CloseReason.CloseCodes.TRY_AGAIN_LATER, "消费过慢");
+            return;
+        }
+        if (next == null) {
+            taskScheduler.schedule(this::sendNext, Instant.now().plusMillis(coalesceWindow));
+            return;
+        }
+        doSend(next);
+    }
+
+    /**
+     * 异步发送一条消息，完成后继续发送队列中的下一条
+     *
+     * @param message
+     */
+    private void doSend(String message) {
+        try {
+            session.getAsyncRemote().sendText(message, this::onSendResult);
+        } catch (Exception e) {
+            //会话已关闭等情况下直接抛出异常，不会进入回调
+            onSendResult(new SendResult(e));
+        }
+    }
+
+    private void onSendResult(SendResult result) {
+        if (!result.isOK()) {
+            log.warn("WebSocket客户端{}消息发送失败，关闭连接:{}", sid, result.getException().getMessage());
+            synchronized (this) {
+                closed = true;
+                sending = false;
+                queue.clear();
+            }
+            close(CloseReason.CloseCodes.UNEXPECTED_CONDITION, "消息发送失败");
+            return;
+        }
+        sendNext();
+    }
+
+    /**
+     * 发送队列中的下一条消息，开启合并发送时把队列中的全部消息合并发送
+     */
+    private void sendNext() {
+        String next;
+        synchronized (this) {
+            if (closed || queue.isEmpty()) {
+                sending = false;
+                return;
+            }
+            if (coalesceWindow > 0) {
+                StringJoiner joiner = new StringJoiner(",", "[", "]");
+                while (!queue.isEmpty()) {
+                    joiner.add(queue.pollFirst());
+                }
+                next = joiner.toString();
+            } else {
+                next = queue.pollFirst();
+            }
+        }
+        doSend(next);
+    }
+
+    /**
+     * 会话关闭后不再发送消息
+     */
+    public synchronized void markClosed() {
+        closed = true;
+        queue.clear();
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    private void close(CloseReason.CloseCode code, String reason) {
+        try {
+            if (session.isOpen()) {
+                session.close(new CloseReason(code, reason));
+            }
+        } catch (IOException e) {
+            log.debug("关闭WebSocket客户端{}失败:{}", sid, e.getMessage());
+        }
+    }
+}
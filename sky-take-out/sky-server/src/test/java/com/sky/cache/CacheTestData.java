@@ -0,0 +1,40 @@
+package com.sky.cache;
+
+import com.sky.entity.DishFlavor;
+import com.sky.vo.DishVO;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 缓存测试使用的菜品数据，结构与用户端菜品列表缓存的内容一致
+ */
+final class CacheTestData {
+
+    private CacheTestData() {
+    }
+
+    static List<DishVO> dishes(int count) {
+        List<DishVO> dishes = new ArrayList<>(count);
+        for (long i = 1; i <= count; i++) {
+            List<DishFlavor> flavors = new ArrayList<>();
+            flavors.add(DishFlavor.builder().id(i * 10).dishId(i).name("甜味").value("[\"无糖\",\"少糖\",\"半糖\",\"多糖\",\"全糖\"]").build());
+            flavors.add(DishFlavor.builder().id(i * 10 + 1).dishId(i).name("温度").value("[\"热饮\",\"常温\",\"去冰\",\"少冰\",\"多冰\"]").build());
+            dishes.add(DishVO.builder()
+                    .id(i)
+                    .name("菜品" + i)
+                    .categoryId(11L)
+                    .price(new BigDecimal("38.00"))
+                    .image("https://sky-itcast.oss-cn-beijing.aliyuncs.com/dish-" + i + ".png")
+                    .description("精选食材，现点现做，菜品" + i + "的描述信息")
+                    .status(1)
+                    .updateTime(LocalDateTime.of(2024, 5, 1, 12, 30))
+                    .categoryName("热菜")
+                    .flavors(flavors)
+                    .build());
+        }
+        return dishes;
+    }
+}
@@ -0,0 +1,63 @@
+package com.sky.cache;
+
+import com.sky.vo.DishVO;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 比较JDK序列化、json、Smile以及gzip压缩后的数据大小和读写耗时
+ * 以一个分类下的菜品列表作为数据，结果输出到日志，不做断言
+ * 默认不随单元测试执行，需要时运行：mvn test -pl sky-server -Dgroups=benchmark -Dtest.excludedGroups=
+ */
+@Slf4j
+@Tag("benchmark")
+class CompactRedisSerializerBenchmarkTest {
+
+    private static final int WARMUP = 200;
+    private static final int ITERATIONS = 2000;
+
+    @Test
+    void compareFormats() {
+        Map<String, RedisSerializer<Object>> serializers = new LinkedHashMap<>();
+        serializers.put("jdk", new JdkSerializationRedisSerializer());
+        serializers.put("json", new CompactRedisSerializer(CompactRedisSerializer.FORMAT_JSON, 0));
+        serializers.put("smile", new CompactRedisSerializer(CompactRedisSerializer.FORMAT_SMILE, 0));
+        serializers.put("json+gzip", new CompactRedisSerializer(CompactRedisSerializer.FORMAT_JSON, 1));
+        serializers.put("smile+gzip", new CompactRedisSerializer(CompactRedisSerializer.FORMAT_SMILE, 1));
+
+        for (int count : new int[]{5, 50}) {
+            List<DishVO> dishes = new ArrayList<>(CacheTestData.dishes(count));
+            for (Map.Entry<String, RedisSerializer<Object>> entry : serializers.entrySet()) {
+                RedisSerializer<Object> serializer = entry.getValue();
+                byte[] data = serializer.serialize(dishes);
+                assertEquals(dishes, serializer.deserialize(data));
+
+                for (int i = 0; i < WARMUP; i++) {
+                    serializer.deserialize(serializer.serialize(dishes));
+                }
+                long writeNanos = 0;
+                long readNanos = 0;
+                for (int i = 0; i < ITERATIONS; i++) {
+                    long start = System.nanoTime();
+                    data = serializer.serialize(dishes);
+                    long middle = System.nanoTime();
+                    serializer.deserialize(data);
+                    readNanos += System.nanoTime() - middle;
+                    writeNanos += middle - start;
+                }
+                log.info("{}个菜品 {}: {}字节, 写入{}us, 读取{}us", count, entry.getKey(), data.length,
+                        writeNanos / ITERATIONS / 1000.0, readNanos / ITERATIONS / 1000.0);
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.sky.cache;
+
+import com.sky.entity.DishFlavor;
+import com.sky.vo.DishVO;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactRedisSerializerTest {
+
+    private final CompactRedisSerializer json = new CompactRedisSerializer(CompactRedisSerializer.FORMAT_JSON, 0);
+    private final CompactRedisSerializer smile = new CompactRedisSerializer(CompactRedisSerializer.FORMAT_SMILE, 0);
+
+    @Test
+    void roundTripObjectList() {
+        List<DishVO> dishes = CacheTestData.dishes(3);
+        assertEquals(dishes, json.deserialize(json.serialize(dishes)));
+        assertEquals(dishes, smile.deserialize(smile.serialize(dishes)));
+    }
+
+    @Test
+    void topLevelScalarsKeepTheirType() {
+        for (CompactRedisSerializer serializer : new CompactRedisSerializer[]{json, smile}) {
+            assertEquals(Long.valueOf(5L), serializer.deserialize(serializer.serialize(5L)));
+            assertEquals(Integer.valueOf(5), serializer.deserialize(serializer.serialize(5)));
+            assertEquals(new BigDecimal("12.50"), serializer.deserialize(serializer.serialize(new BigDecimal("12.50"))));
+            assertEquals("sky", serializer.deserialize(serializer.serialize("sky")));
+            assertEquals(Boolean.TRUE, serializer.deserialize(serializer.serialize(true)));
+        }
+    }
+
+    @Test
+    void mapValuesKeepTheirType() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("id", 7L);
+        map.put("flavor", DishFlavor.builder().id(1L).dishId(7L).name("辣度").value("[\"微辣\"]").build());
+        assertEquals(map, json.deserialize(json.serialize(map)));
+    }
+
+    @Test
+    void nullAndEmpty() {
+        assertEquals(0, json.serialize(null).length);
+        assertNull(json.deserialize(null));
+        assertNull(json.deserialize(new byte[0]));
+    }
+
+    @Test
+    void compressesAboveThresholdWithGzipMarker() {
+        CompactRedisSerializer gzipJson = new CompactRedisSerializer(CompactRedisSerializer.FORMAT_JSON, 256);
+        CompactRedisSerializer gzipSmile = new CompactRedisSerializer(CompactRedisSerializer.FORMAT_SMILE, 256);
+        List<DishVO> dishes = CacheTestData.dishes(50);
+
+        byte[] plain = json.serialize(dishes);
+        byte[] compressed = gzipJson.serialize(dishes);
+        assertEquals(0x01, plain[0]);
+        assertEquals(0x11, compressed[0]);
+        assertTrue(compressed.length < plain.length);
+        assertEquals(dishes, gzipJson.deserialize(compressed));
+
+        byte[] compressedSmile = gzipSmile.serialize(dishes);
+        assertEquals(0x12, compressedSmile[0]);
+        assertEquals(dishes, gzipSmile.deserialize(compressedSmile));
+
+        //低于阈值时不压缩
+        byte[] small = gzipJson.serialize(1L);
+        assertEquals(0x01, small[0]);
+        //写入格式不同也能按标记读取
+        assertEquals(dishes, json.deserialize(compressedSmile));
+    }
+
+    @Test
+    void readsLegacyJdkSerializedValues() {
+        JdkSerializationRedisSerializer jdk = new JdkSerializationRedisSerializer();
+        List<DishVO> dishes = new ArrayList<>(CacheTestData.dishes(2));
+        byte[] legacy = jdk.serialize(dishes);
+        assertEquals((byte) 0xAC, legacy[0]);
+        assertEquals(dishes, json.deserialize(legacy));
+        assertEquals(dishes, smile.deserialize(legacy));
+        assertEquals(Long.valueOf(9L), json.deserialize(jdk.serialize(9L)));
+    }
+
+    @Test
+    void rejectsTypesOutsideWhitelist() {
+        byte[] payload = ("\u0001[\"javax.management.openmbean.CompositeDataSupport\",{}]").getBytes(StandardCharsets.UTF_8);
+        assertThrows(SerializationException.class, () -> json.deserialize(payload));
+
+        byte[] nested = ("\u0001[\"java.util.ArrayList\",[[\"java.lang.ProcessBuilder\",{}]]]").getBytes(StandardCharsets.UTF_8);
+        assertThrows(SerializationException.class, () -> json.deserialize(nested));
+    }
+
+    @Test
+    void emptyCollections() {
+        List<Object> empty = new ArrayList<>();
+        assertEquals(empty, json.deserialize(json.serialize(empty)));
+        assertEquals(Collections.emptyMap(), json.deserialize(json.serialize(new HashMap<>())));
+    }
+
+    @Test
+    void dateTimeRoundTrip() {
+        //项目的json日期时间格式精确到分钟
+        LocalDateTime time = LocalDateTime.of(2024, 5, 1, 12, 30);
+        assertEquals(time, json.deserialize(json.serialize(time)));
+        assertEquals(time, smile.deserialize(smile.serialize(time)));
+    }
+}
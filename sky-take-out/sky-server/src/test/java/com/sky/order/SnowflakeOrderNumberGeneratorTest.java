@@ -0,0 +1,133 @@
+package com.sky.order;
+
+import com.sky.exception.OrderBusinessException;
+import com.sky.properties.OrderProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SnowflakeOrderNumberGeneratorTest {
+
+    private static final int THREADS = 8;
+    private static final int PER_THREAD = 100_000;
+
+    @Test
+    void concurrentNumbersAreUniqueAndIncreasingPerThread() throws Exception {
+        SnowflakeOrderNumberGenerator generator = generator(1L, null);
+        Set<Long> numbers = ConcurrentHashMap.newKeySet(THREADS * PER_THREAD);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    long last = -1;
+                    boolean increasing = true;
+                    for (int i = 0; i < PER_THREAD; i++) {
+                        long number = Long.parseLong(generator.nextNumber());
+                        increasing &= number > last;
+                        last = number;
+                        numbers.add(number);
+                    }
+                    return increasing;
+                }));
+            }
+            start.countDown();
+            for (Future<Boolean> future : futures) {
+                assertTrue(future.get(60, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(THREADS * PER_THREAD, numbers.size());
+    }
+
+    @Test
+    void differentWorkersNeverCollide() {
+        SnowflakeOrderNumberGenerator first = generator(1L, null);
+        SnowflakeOrderNumberGenerator second = generator(2L, null);
+        Set<String> numbers = new HashSet<>();
+        for (int i = 0; i < 50_000; i++) {
+            assertTrue(numbers.add(first.nextNumber()));
+            assertTrue(numbers.add(second.nextNumber()));
+        }
+    }
+
+    @Test
+    void rejectsWorkerIdOutOfRange() {
+        assertThrows(IllegalStateException.class, () -> generator(1024L, null));
+        assertThrows(IllegalStateException.class, () -> generator(-1L, null));
+    }
+
+    @Test
+    void stopsIssuingNumbersWhenLeaseCannotBeRenewed() throws Exception {
+        SnowflakeOrderNumberGenerator generator = generator(null, new UnreachableRedisTemplate());
+        assertNotNull(generator.nextNumber());
+
+        //redis不可用，续约失败，租约有效期内仍可生成
+        generator.renewLease();
+        assertNotNull(generator.nextNumber());
+
+        //超过有效期后停止生成
+        Thread.sleep(1100);
+        generator.renewLease();
+        assertThrows(OrderBusinessException.class, generator::nextNumber);
+    }
+
+    private static SnowflakeOrderNumberGenerator generator(Long workerId, StringRedisTemplate redisTemplate) {
+        OrderProperties properties = new OrderProperties();
+        properties.setWorkerId(workerId);
+        properties.setWorkerLeaseTtl(1);
+        SnowflakeOrderNumberGenerator generator = new SnowflakeOrderNumberGenerator();
+        ReflectionTestUtils.setField(generator, "orderProperties", properties);
+        ReflectionTestUtils.setField(generator, "stringRedisTemplate", redisTemplate);
+        generator.init();
+        return generator;
+    }
+
+    /**
+     * 可以租到机器id，之后所有脚本调用都失败，模拟redis不可用
+     */
+    private static class UnreachableRedisTemplate extends StringRedisTemplate {
+
+        private final ValueOperations<String, String> valueOperations;
+
+        @SuppressWarnings("unchecked")
+        UnreachableRedisTemplate() {
+            valueOperations = mock(ValueOperations.class);
+            when(valueOperations.setIfAbsent(anyString(), anyString(), anyLong(), any(TimeUnit.class))).thenReturn(true);
+        }
+
+        @Override
+        public ValueOperations<String, String> opsForValue() {
+            return valueOperations;
+        }
+
+        @Override
+        public <T> T execute(RedisScript<T> script, List<String> keys, Object... args) {
+            throw new RedisConnectionFailureException("redis不可用");
+        }
+    }
+}
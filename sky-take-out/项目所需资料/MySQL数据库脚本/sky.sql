@@ -182,7 +182,9 @@ CREATE TABLE `orders` (
   `pack_amount` int DEFAULT NULL COMMENT '打包费',
   `tableware_number` int DEFAULT NULL COMMENT '餐具数量',
   `tableware_status` tinyint(1) NOT NULL DEFAULT '1' COMMENT '餐具数量状态  1按餐量提供  0选择具体数量',
-  PRIMARY KEY (`id`)
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_number` (`number`),
+  KEY `idx_status_order_time` (`status`,`order_time`)
 ) ENGINE=InnoDB AUTO_INCREMENT=4 DEFAULT CHARSET=utf8mb3 COLLATE=utf8_bin COMMENT='订单表';
 
 DROP TABLE IF EXISTS `setmeal`;
@@ -225,7 +227,9 @@ CREATE TABLE `shopping_cart` (
   `number` int NOT NULL DEFAULT '1' COMMENT '数量',
   `amount` decimal(10,2) NOT NULL COMMENT '金额',
   `create_time` datetime DEFAULT NULL COMMENT '创建时间',
-  PRIMARY KEY (`id`)
+  `line_key` varchar(128) COLLATE utf8_bin GENERATED ALWAYS AS (concat_ws(':',`user_id`,ifnull(`dish_id`,''),ifnull(`setmeal_id`,''),ifnull(`dish_flavor`,''))) STORED COMMENT '商品唯一标识',
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_line_key` (`line_key`)
 ) ENGINE=InnoDB AUTO_INCREMENT=9 DEFAULT CHARSET=utf8mb3 COLLATE=utf8_bin COMMENT='购物车';
 
 DROP TABLE IF EXISTS `user`;
@@ -239,4 +243,23 @@ CREATE TABLE `user` (
   `avatar` varchar(500) COLLATE utf8_bin DEFAULT NULL COMMENT '头像',
   `create_time` datetime DEFAULT NULL,
   PRIMARY KEY (`id`)
-) ENGINE=InnoDB AUTO_INCREMENT=4 DEFAULT CHARSET=utf8mb3 COLLATE=utf8_bin COMMENT='用户信息';
\ No newline at end of file
+) ENGINE=InnoDB AUTO_INCREMENT=4 DEFAULT CHARSET=utf8mb3 COLLATE=utf8_bin COMMENT='用户信息';
+
+DROP TABLE IF EXISTS `daily_business_stats`;
+CREATE TABLE `daily_business_stats` (
+  `stat_date` date NOT NULL COMMENT '统计日期',
+  `order_count` int NOT NULL DEFAULT '0' COMMENT '订单总数',
+  `completed_count` int NOT NULL DEFAULT '0' COMMENT '已完成订单数',
+  `turnover` decimal(12,2) NOT NULL DEFAULT '0.00' COMMENT '营业额',
+  `new_users` int NOT NULL DEFAULT '0' COMMENT '新增用户数',
+  `update_time` datetime DEFAULT NULL COMMENT '更新时间',
+  PRIMARY KEY (`stat_date`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb3 COLLATE=utf8_bin COMMENT='每日营业数据汇总';
+
+DROP TABLE IF EXISTS `pay_notify_log`;
+CREATE TABLE `pay_notify_log` (
+  `transaction_id` varchar(64) COLLATE utf8_bin NOT NULL COMMENT '微信支付交易号',
+  `out_trade_no` varchar(50) COLLATE utf8_bin NOT NULL COMMENT '商户订单号',
+  `create_time` datetime DEFAULT NULL COMMENT '首次收到回调的时间',
+  PRIMARY KEY (`transaction_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb3 COLLATE=utf8_bin COMMENT='支付回调记录';